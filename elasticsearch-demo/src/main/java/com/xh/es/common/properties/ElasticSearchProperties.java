@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author H.Yang
  * @date 2022/11/22
@@ -17,4 +20,292 @@ public class ElasticSearchProperties {
     private String username;
     private String password;
     private int level;
+
+    /**
+     * 批量写入(bulk)相关配置
+     */
+    private Bulk bulk = new Bulk();
+    /**
+     * 写入合并缓冲相关配置
+     */
+    private Coalesce coalesce = new Coalesce();
+    /**
+     * 本地预写日志(spool)相关配置
+     */
+    private Spool spool = new Spool();
+    /**
+     * 异步 update_by_query/delete_by_query 相关配置
+     */
+    private Task task = new Task();
+    /**
+     * 按 id 读取文档的批量加载器相关配置
+     */
+    private Loader loader = new Loader();
+    /**
+     * getDocument 文档缓存相关配置
+     */
+    private Cache cache = new Cache();
+    /**
+     * 条件查询结果缓存相关配置
+     */
+    private QueryCache queryCache = new QueryCache();
+    /**
+     * 条件查询相关配置
+     */
+    private Search search = new Search();
+    /**
+     * 并行(sliced scroll)导出相关配置
+     */
+    private Export export = new Export();
+    /**
+     * 异步(非阻塞)接口配置
+     */
+    private Async async = new Async();
+
+    @Data
+    public static class Bulk {
+
+        /**
+         * 累计多少个文档后提交一次 bulk
+         */
+        private int actions = 1000;
+        /**
+         * 累计多少 MB 后提交一次 bulk
+         */
+        private long sizeMb = 5;
+        /**
+         * 每隔多少秒无论是否达到阈值都提交一次 bulk
+         */
+        private long flushIntervalSeconds = 5;
+        /**
+         * 允许同时在途(未返回)的 bulk 数量, 0 表示同步提交
+         */
+        private int concurrentRequests = 1;
+        /**
+         * 关闭时等待在途 bulk 完成的最长秒数
+         */
+        private long closeTimeoutSeconds = 30;
+        /**
+         * bulk 中单个文档被拒绝(429)时的最大重试次数
+         */
+        private int maxRetries = 3;
+        /**
+         * 第一次重试前的等待毫秒数,之后按指数增长
+         */
+        private long retryInitialMillis = 100;
+        /**
+         * 重试等待的最大毫秒数
+         */
+        private long retryMaxMillis = 5000;
+        /**
+         * 大批量写入拆分为子 bulk 后,同时执行的子 bulk 数量
+         */
+        private int parallelism = 2;
+        /**
+         * 是否根据集群拒绝情况(429)和耗时自动调整并发数与单个 bulk 文档数
+         */
+        private boolean adaptive = true;
+        /**
+         * 自动调整时并发数的下限
+         */
+        private int minParallelism = 1;
+        /**
+         * 自动调整时并发数的上限
+         */
+        private int maxParallelism = 8;
+        /**
+         * 自动调整时单个 bulk 文档数的下限,同时也是每次增大的步长
+         */
+        private int minActions = 100;
+        /**
+         * 自动调整时单个 bulk 文档数的上限
+         */
+        private int maxActions = 5000;
+        /**
+         * 单个 bulk 的目标耗时,低于该值才会增大并发
+         */
+        private long targetLatencyMillis = 1000;
+        /**
+         * 保留的调整历史条数
+         */
+        private int historySize = 100;
+        /**
+         * 带版本号(if_seq_no/if_primary_term)的批量更新,出现版本冲突(409)时重新读取并合并的最大次数
+         */
+        private int conflictRetries = 5;
+        /**
+         * 是否按目标分片拆分 bulk,开启后每个子 bulk 只包含同一个分片的文档
+         */
+        private boolean shardPartition = false;
+    }
+
+    @Data
+    public static class Coalesce {
+
+        /**
+         * 合并窗口,每隔多少毫秒提交一次缓冲中的写入
+         */
+        private long windowMillis = 1000;
+        /**
+         * 缓冲中不同文档(index+id)的数量达到该值时立即提交
+         */
+        private int maxKeys = 10000;
+        /**
+         * 缓冲中与提交中的文档数量上限, 达到后写入阻塞等待提交完成(集群变慢或不可用时)
+         */
+        private int maxPendingKeys = 100000;
+        /**
+         * 写入阻塞等待的最长毫秒数, 超过后拒绝写入(抛出异常)
+         */
+        private long maxBlockMillis = 30000;
+    }
+
+    @Data
+    public static class Spool {
+
+        /**
+         * 是否开启本地 spool, 开启后写入先追加到本地文件,由后台线程回放到 ES
+         */
+        private boolean enabled = false;
+        /**
+         * spool 文件目录
+         */
+        private String dir = "es-spool";
+        /**
+         * 单个分段文件大小(MB),写满后滚动到下一个分段,已回放完的分段会被删除
+         */
+        private int segmentSizeMb = 64;
+        /**
+         * 回放间隔毫秒数,集群不可用时同样按该间隔重试
+         */
+        private long drainIntervalMillis = 500;
+        /**
+         * 单次回放的最大文档数
+         */
+        private int drainActions = 1000;
+    }
+
+    @Data
+    public static class Task {
+
+        /**
+         * 分片(slice)数量, auto 表示与索引的分片数一致
+         */
+        private String slices = "auto";
+        /**
+         * 每秒处理的文档数限制, <=0 表示不限速
+         */
+        private float requestsPerSecond = -1;
+    }
+
+    @Data
+    public static class Loader {
+
+        /**
+         * 是否通过批量加载器读取单个文档, 关闭后每次 getDocument 单独 GET;
+         * 开启后每次读取最多多等待 windowMillis, 只在并发读取多的场景下开启
+         */
+        private boolean enabled = false;
+        /**
+         * 合并窗口毫秒数,窗口内到达的读取合并为一次 _mget
+         */
+        private long windowMillis = 2;
+        /**
+         * 单次 _mget 的最大文档数,达到后立即提交
+         */
+        private int maxBatchSize = 200;
+    }
+
+    @Data
+    public static class Cache {
+
+        /**
+         * 是否开启文档缓存, 开启后其它客户端修改的文档最长 expireAfterWriteSeconds 后才能读到
+         */
+        private boolean enabled = false;
+        /**
+         * 缓存的最大容量(MB), 按 _source 的预估字节数计算
+         */
+        private long maxWeightMb = 64;
+        /**
+         * 文档放入缓存多少秒后过期
+         */
+        private long expireAfterWriteSeconds = 60;
+    }
+
+    @Data
+    public static class QueryCache {
+
+        /**
+         * 是否开启条件查询结果缓存, 开启后其它客户端的写入最长 ttlSeconds 后才能查到
+         */
+        private boolean enabled = false;
+        /**
+         * 缓存的最大容量(MB), 按结果 JSON 的预估字节数计算
+         */
+        private long maxWeightMb = 32;
+        /**
+         * 结果放入缓存多少秒后过期
+         */
+        private long ttlSeconds = 30;
+        /**
+         * 按索引单独配置的过期秒数, <=0 表示该索引不缓存
+         */
+        private Map<String, Long> indexTtlSeconds = new HashMap<>();
+    }
+
+    @Data
+    public static class Search {
+
+        /**
+         * 分页查询时总数的统计方式, 随本页的查询一起返回: true 精确统计, 数字表示最多精确统计到该值,超出后总数为该值
+         */
+        private String trackTotalHits = "true";
+        /**
+         * 超出 from-size 上限时的深分页方式: scroll 或 pit(point in time + search_after, 需要 Elasticsearch 7.10 及以上版本), 只对同步查询生效,异步查询总是使用 scroll
+         */
+        private String deepPageStrategy = "scroll";
+        /**
+         * 深分页时 scroll 上下文或 PIT 的保持分钟数
+         */
+        private long deepPageKeepAliveMinutes = 2;
+        /**
+         * scroll/search_after 逐页查询时预取的页数, 转换当前页的同时异步查询后面的页, 0 表示不预取(当前页处理完再查询下一页)
+         */
+        private int prefetchDepth = 1;
+    }
+
+    @Data
+    public static class Export {
+
+        /**
+         * 切片(slice)数量, 0 表示与索引的主分片数一致
+         */
+        private int slices = 0;
+        /**
+         * 同时执行的切片数量(导出线程数), 0 表示与 CPU 核数一致
+         */
+        private int parallelism = 0;
+        /**
+         * 每个切片每次 scroll 的文档数
+         */
+        private int size = 1000;
+        /**
+         * scroll 上下文的保持分钟数
+         */
+        private long keepAliveMinutes = 2;
+    }
+
+    @Data
+    public static class Async {
+
+        /**
+         * 超时毫秒数, 超时后取消正在执行的 HTTP 请求并以 TimeoutException 结束, 0 表示不限制(只受客户端 socket 超时限制)
+         */
+        private long timeoutMillis = 0;
+        /**
+         * 处理查询结果(反序列化、发出下一页请求)的线程数, 0 表示与 CPU 核数一致
+         */
+        private int threads = 0;
+    }
 }
@@ -0,0 +1,170 @@
+package com.xh.es.common.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.xh.es.model.ElasticSearchHitAware;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 命中文档(hit)转换工具
+ * 每个 hit 的 _source 字节直接反序列化为实体,不再把所有 hit 拼接成一个 JSON 数组字符串后再整体解析;
+ * 每个类型的 ObjectReader 只创建一次并缓存,ObjectReader 不可变,可以在多个线程中共用
+ * <p>
+ * 1: 实体实现 {@link ElasticSearchHitAware} 时通过回调设置 _id 和 sort;
+ * 2: 兼容原来在 _source 中插入 sort 的方式: 需要 sort 且实体有 sort 属性(未实现接口)时,反序列化后再设置 sort 属性
+ * <p>
+ * 使用 {@link ElasticSearchSourceUtil#MAPPER}, 与写入时的序列化规则一致(Date 为毫秒时间戳,忽略未知属性);
+ * 查询、按 id 读取(get/mget、文档缓存)以及写入后返回的文档都通过这里转换,同一个 _source 在各个方法中得到相同的对象
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+public class ElasticSearchHitMapper {
+
+    private static final String SORT = "sort";
+
+    private static final Map<Class<?>, Binding> BINDINGS = new ConcurrentHashMap<>();
+
+    /**
+     * 将查询结果的全部 hit 转换为 List<T>
+     *
+     * @param hits 查询结果
+     * @param var1 返回的对象类型
+     * @param sort 是否需要 sort(search_after 场景)
+     * @param <T>  返回的对象类型
+     * @return List<T>
+     */
+    public static <T> List<T> toList(SearchHits hits, Class<T> var1, boolean sort) {
+        SearchHit[] array = hits.getHits();
+        if (array.length == 0) {
+            return new ArrayList<>();
+        }
+        Binding binding = binding(var1);
+        List<T> list = new ArrayList<>(array.length);
+        for (SearchHit hit : array) {
+            list.add(var1.cast(binding.map(hit, sort)));
+        }
+        return list;
+    }
+
+    /**
+     * 转换单个 hit
+     *
+     * @param hit  命中文档
+     * @param var1 返回的对象类型
+     * @param sort 是否需要 sort
+     * @param <T>  返回的对象类型
+     * @return T, 没有 _source 时为 null
+     */
+    public static <T> T toBean(SearchHit hit, Class<T> var1, boolean sort) {
+        return var1.cast(binding(var1).map(hit, sort));
+    }
+
+    /**
+     * 转换低级客户端返回的 hit(JSON 树)
+     *
+     * @param hit  hits.hits 中的一个元素
+     * @param var1 返回的对象类型
+     * @param sort 是否需要 sort
+     * @param <T>  返回的对象类型
+     * @return T, 没有 _source 时为 null
+     */
+    public static <T> T toBean(JsonNode hit, Class<T> var1, boolean sort) {
+        return var1.cast(binding(var1).map(hit, sort));
+    }
+
+    /**
+     * 转换单独保存的 _id + _source(例如查询缓存中的 hit、get 返回或文档缓存中的 _source)
+     *
+     * @param id     _id
+     * @param source _source JSON
+     * @param var1   返回的对象类型
+     * @param <T>    返回的对象类型
+     * @return T, 没有 _source 时为 null
+     */
+    public static <T> T toBean(String id, String source, Class<T> var1) {
+        return var1.cast(binding(var1).map(id, source));
+    }
+
+    private static Binding binding(Class<?> var1) {
+        return BINDINGS.computeIfAbsent(var1, Binding::new);
+    }
+
+    private static class Binding {
+
+        private final ObjectReader reader;
+        private final boolean aware;
+        /**
+         * 未实现 {@link ElasticSearchHitAware} 但有 sort 属性
+         */
+        private final boolean sortProperty;
+
+        Binding(Class<?> var1) {
+            this.reader = ElasticSearchSourceUtil.MAPPER.readerFor(var1);
+            this.aware = ElasticSearchHitAware.class.isAssignableFrom(var1);
+            this.sortProperty = !aware && ElasticSearchSourceUtil.MAPPER.getDeserializationConfig()
+                    .introspect(ElasticSearchSourceUtil.MAPPER.constructType(var1))
+                    .findProperties().stream().anyMatch(property -> SORT.equals(property.getName()) && property.hasSetter());
+        }
+
+        Object map(SearchHit hit, boolean sort) {
+            if (!hit.hasSource()) {
+                return null;
+            }
+            BytesRef ref = hit.getSourceRef().toBytesRef();
+            try {
+                return this.hook(reader.readValue(ref.bytes, ref.offset, ref.length), hit.getId(), sort ? hit.getSortValues() : null);
+            } catch (IOException e) {
+                throw new UncheckedIOException("ES文档反序列化失败,_id=" + hit.getId(), e);
+            }
+        }
+
+        Object map(JsonNode hit, boolean sort) {
+            JsonNode source = hit.get("_source");
+            if (null == source) {
+                return null;
+            }
+            try {
+                Object[] sortValues = sort && hit.has(SORT) ? ElasticSearchSourceUtil.MAPPER.treeToValue(hit.get(SORT), Object[].class) : null;
+                return this.hook(reader.readValue(source), hit.path("_id").asText(null), sortValues);
+            } catch (IOException e) {
+                throw new UncheckedIOException("ES文档反序列化失败,_id=" + hit.path("_id").asText(), e);
+            }
+        }
+
+        Object map(String id, String source) {
+            if (null == source) {
+                return null;
+            }
+            try {
+                return this.hook(reader.readValue(source), id, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException("ES文档反序列化失败,_id=" + id, e);
+            }
+        }
+
+        private Object hook(Object bean, String id, Object[] sortValues) throws IOException {
+            boolean hasSort = null != sortValues && sortValues.length > 0;
+            if (aware) {
+                ElasticSearchHitAware hitAware = (ElasticSearchHitAware) bean;
+                hitAware.setHitId(id);
+                if (hasSort) {
+                    hitAware.setHitSortValues(sortValues);
+                }
+            } else if (sortProperty && hasSort) {
+                ElasticSearchSourceUtil.MAPPER.updateValue(bean, Collections.singletonMap(SORT, sortValues));
+            }
+            return bean;
+        }
+    }
+}
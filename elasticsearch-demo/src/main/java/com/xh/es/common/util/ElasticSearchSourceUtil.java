@@ -0,0 +1,96 @@
+package com.xh.es.common.util;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * 文档内容(_source)序列化工具
+ * 实体直接以 UTF-8 写入字节缓冲区,交给 IndexRequest/UpdateRequest 时只做包装不做复制,
+ * 省去 JSONUtil.toJsonStr 生成的中间 String 以及 String -> byte[] 的再次编码
+ * <p>
+ * 与 JSONUtil.toJsonStr 保持一致: 忽略 null 属性, Date 序列化为毫秒时间戳
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+public class ElasticSearchSourceUtil {
+
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .setDefaultPropertyInclusion(JsonInclude.Value.construct(JsonInclude.Include.NON_NULL, JsonInclude.Include.NON_NULL))
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    /**
+     * 将实体序列化为 _source 字节
+     * 入参本身是 JSON 字符串时直接按 UTF-8 编码
+     *
+     * @param var2 实体、Map 或 JSON 字符串
+     * @return BytesReference
+     */
+    public static BytesReference toBytes(Object var2) {
+        if (var2 instanceof CharSequence) {
+            return new BytesArray(var2.toString());
+        }
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            MAPPER.writeValue(out, var2);
+            return out.bytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("ES文档序列化失败", e);
+        }
+    }
+
+    /**
+     * 将实体转换为 Map,属性规则与 {@link #toBytes(Object)} 一致
+     *
+     * @param var2 实体、Map 或 JSON 字符串
+     * @return Map
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> toMap(Object var2) {
+        if (var2 instanceof CharSequence) {
+            try {
+                return MAPPER.readValue(var2.toString(), Map.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException("ES文档反序列化失败", e);
+            }
+        }
+        return MAPPER.convertValue(var2, Map.class);
+    }
+
+    /**
+     * 设置 IndexRequest 的 _source
+     *
+     * @param indexRequest 请求
+     * @param var2         实体、Map 或 JSON 字符串
+     * @return IndexRequest
+     */
+    public static IndexRequest source(IndexRequest indexRequest, Object var2) {
+        BytesRef ref = toBytes(var2).toBytesRef();
+        return indexRequest.source(ref.bytes, ref.offset, ref.length, XContentType.JSON);
+    }
+
+    /**
+     * 设置 UpdateRequest 的 doc (部分更新的内容)
+     *
+     * @param updateRequest 请求
+     * @param var2          实体、Map 或 JSON 字符串
+     * @return UpdateRequest
+     */
+    public static UpdateRequest doc(UpdateRequest updateRequest, Object var2) {
+        BytesRef ref = toBytes(var2).toBytesRef();
+        return updateRequest.doc(ref.bytes, ref.offset, ref.length, XContentType.JSON);
+    }
+}
@@ -13,6 +13,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.SearchRequest;
@@ -28,11 +29,13 @@ import org.elasticsearch.index.reindex.UpdateByQueryRequest;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.StoredFieldsContext;
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 
 /**
@@ -76,9 +79,31 @@ public class ElasticSearchUtil {
         if (!CollectionUtils.isEmpty(shouldClauses)) {
             shouldClauses.forEach(boolQueryBuilder::should);
         }
+        // 拼接返回字段
+        projection(searchSourceBuilder, esSearchDto);
         return searchSourceBuilder.query(boolQueryBuilder);
     }
 
+    /**
+     * 拼接返回字段: _source 的 includes/excludes、docvalue_fields、stored_fields: _none_
+     *
+     * @param searchSourceBuilder 查询
+     * @param esSearchDto         条件
+     */
+    public static void projection(SearchSourceBuilder searchSourceBuilder, ElasticSearchSearchDTO esSearchDto) {
+        if (!esSearchDto.isFetchSource()) {
+            searchSourceBuilder.fetchSource(false);
+        } else if (null != esSearchDto.getIncludes() || null != esSearchDto.getExcludes()) {
+            searchSourceBuilder.fetchSource(esSearchDto.getIncludes(), esSearchDto.getExcludes());
+        }
+        if (!CollectionUtils.isEmpty(esSearchDto.getDocValueFields())) {
+            esSearchDto.getDocValueFields().forEach(searchSourceBuilder::docValueField);
+        }
+        if (esSearchDto.isStoredFieldsNone()) {
+            searchSourceBuilder.storedField(StoredFieldsContext._NONE_);
+        }
+    }
+
     /**
      * 拼接查询方式,例如 term、match等
      *
@@ -101,6 +126,7 @@ public class ElasticSearchUtil {
      * 根据实体类自动转换为ScriptDto {@link ScriptDTO}
      * ScriptDto.params = 每个不为空的属性的名称和值组成 -> map的k,v
      * ScriptDto.script = 每个不为空的属性的名称和值组成,且该条件均为覆盖原值(重新该字段赋值)
+     * 注意: 每一种字段组合都会生成一个新的 inline 脚本,需要 ES 单独编译,批量场景请使用 {@link com.xh.es.service.script.ElasticSearchScriptRegistry#setFields(Object)}
      *
      * @param var2 修改后的内容
      * @return ScriptDto
@@ -149,7 +175,7 @@ public class ElasticSearchUtil {
     }
 
     /**
-     * 查询结果使用 fastjson 转换为 List<T>
+     * 查询结果转换为 List<T>
      * 用于非{@link com.xh.es.service.strategy.SearchAfterPageStrategyImpl} 场景
      *
      * @param searchResponse es查询结果,从中取出 Hits 进行转换
@@ -162,32 +188,18 @@ public class ElasticSearchUtil {
     }
 
     /**
-     * 查询结果使用 fastjson 转换为 List<T>
+     * 查询结果转换为 List<T>, 每个 hit 的 _source 直接反序列化,见 {@link ElasticSearchHitMapper}
      *
      * @param searchResponse es查询结果,从中取出 Hits 进行转换
      * @param var1           返回的对象类型
      * @param <T>            返回的对象类型
-     * @param source         是否需要用于 {@link com.xh.es.service.strategy.SearchAfterPageStrategyImpl} 场景
+     * @param source         是否需要用于 {@link com.xh.es.service.strategy.SearchAfterPageStrategyImpl} 场景(需要 sort)
      * @return List<T>
      */
     public static <T> List<T> searchResponseToList(SearchResponse searchResponse, Class<T> var1, boolean source) {
-        StringBuilder arrayJson = new StringBuilder("[");
-        StringJoiner joiner = new StringJoiner(",");
-        Arrays.stream(searchResponse.getHits().getHits()).forEach(s -> {
-            if (source) {
-                JSONObject jsonObject = JSONUtil.parseObj(s.getSourceAsString());
-                jsonObject.putOpt("sort", s.getSortValues());
-                joiner.add(JSONUtil.toJsonStr(jsonObject));
-            } else {
-                joiner.add(s.getSourceAsString());
-            }
-        });
-        arrayJson.append(joiner.toString());
-        arrayJson.append("]");
-        return JSONUtil.toList(arrayJson.toString(), var1);
+        return ElasticSearchHitMapper.toList(searchResponse.getHits(), var1, source);
     }
 
-
     public static void esOperationLog(ElasticSearchConst.ESLogLevelEnum esLogLevelEnum, ExecutionMethod executionMethod, String prefix) {
         JSONObject jsonObject = new JSONObject();
         jsonObject.putOpt("status", prefix);
@@ -231,6 +243,10 @@ public class ElasticSearchUtil {
         } else if (request instanceof GetRequest) {
             GetRequest getRequest = (GetRequest) request;
             esLog1(esLogLevelEnum, "getRequest -> DSL:{}", getRequest.toString());
+        } else if (request instanceof MultiGetRequest) {
+            MultiGetRequest multiGetRequest = (MultiGetRequest) request;
+            List<String> ids = multiGetRequest.getItems().stream().map(MultiGetRequest.Item::id).collect(Collectors.toList());
+            esLog1(esLogLevelEnum, "multiGetRequest -> ids={}", JSONUtil.toJsonStr(ids));
         } else if (request instanceof ClearScrollRequest) {
             ClearScrollRequest clearScrollRequest = (ClearScrollRequest) request;
             List<String> scrollIds = clearScrollRequest.getScrollIds();
@@ -0,0 +1,28 @@
+package com.xh.es.model;
+
+/**
+ * 需要获取命中文档 _id、sort 的实体实现该接口
+ * 查询结果转换为实体后由 {@link com.xh.es.common.util.ElasticSearchHitMapper} 回调,不需要在 _source 中插入字段
+ * search_after 分页时可以从 {@link #setHitSortValues(Object[])} 拿到下一页的 values
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+public interface ElasticSearchHitAware {
+
+    /**
+     * 命中文档的 _id
+     *
+     * @param id _id
+     */
+    default void setHitId(String id) {
+    }
+
+    /**
+     * 命中文档的 sort 值, 查询没有排序时不回调
+     *
+     * @param sortValues sort
+     */
+    default void setHitSortValues(Object[] sortValues) {
+    }
+}
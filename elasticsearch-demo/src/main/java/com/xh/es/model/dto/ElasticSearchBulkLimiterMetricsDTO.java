@@ -0,0 +1,61 @@
+package com.xh.es.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @description: bulk 自适应限流指标
+ * 由 {@link com.xh.es.service.bulk.ElasticSearchBulkLimiter} 生成
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Data
+public class ElasticSearchBulkLimiterMetricsDTO {
+
+    /**
+     * 当前允许同时在途的 bulk 数量
+     **/
+    private int limit;
+    /**
+     * 当前单个 bulk 的文档数量
+     **/
+    private int batchSize;
+    /**
+     * 当前在途的 bulk 数量
+     **/
+    private int inFlight;
+    /**
+     * 累计被拒绝(429)的文档数量
+     **/
+    private long totalRejected;
+    /**
+     * 最近的调整记录,按时间先后排列
+     **/
+    private List<Adjustment> history;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Adjustment {
+
+        /**
+         * 调整时间(毫秒时间戳)
+         **/
+        private long timestamp;
+        /**
+         * 调整后的并发数
+         **/
+        private int limit;
+        /**
+         * 调整后的单个 bulk 文档数量
+         **/
+        private int batchSize;
+        /**
+         * 调整原因
+         **/
+        private String reason;
+    }
+}
@@ -0,0 +1,62 @@
+package com.xh.es.model.dto;
+
+import lombok.Data;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @description: bulk 执行结果
+ * 按文档 _id 区分 成功、曾经重试过、最终失败 三种情况,
+ * 一般由 {@link com.xh.es.service.bulk.ElasticSearchBulkExecutor} 返回
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Data
+public class ElasticSearchBulkResultDTO {
+
+    /**
+     * 最终写入成功的文档数量
+     **/
+    private long succeededCount;
+    /**
+     * 最终写入成功的 _id, 流式写入时不保留,只统计 succeededCount
+     **/
+    private List<String> succeededIds = new ArrayList<>();
+    /**
+     * 因可重试的错误(429、503)被重新提交过的 _id, 最终可能成功也可能失败
+     **/
+    private Set<String> retriedIds = new LinkedHashSet<>();
+    /**
+     * 最终失败的 _id -> 失败原因
+     **/
+    private Map<String, BulkItemResponse.Failure> failedItems = new LinkedHashMap<>();
+
+    /**
+     * 是否全部成功
+     *
+     * @return true 没有失败的文档
+     */
+    public boolean isSuccess() {
+        return failedItems.isEmpty();
+    }
+
+    /**
+     * 合并另一个结果(例如拆分后的子 bulk 结果)
+     *
+     * @param other 另一个结果
+     * @return this
+     */
+    public ElasticSearchBulkResultDTO merge(ElasticSearchBulkResultDTO other) {
+        succeededCount += other.getSucceededCount();
+        succeededIds.addAll(other.getSucceededIds());
+        retriedIds.addAll(other.getRetriedIds());
+        failedItems.putAll(other.getFailedItems());
+        return this;
+    }
+}
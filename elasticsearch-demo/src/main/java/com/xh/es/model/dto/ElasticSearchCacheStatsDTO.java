@@ -0,0 +1,52 @@
+package com.xh.es.model.dto;
+
+import lombok.Data;
+
+/**
+ * @description: 缓存统计
+ * 由 {@link com.xh.es.service.cache.ElasticSearchDocumentCache}、{@link com.xh.es.service.cache.ElasticSearchQueryCache} 生成
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Data
+public class ElasticSearchCacheStatsDTO {
+
+    /**
+     * 命中次数
+     **/
+    private long hitCount;
+    /**
+     * 未命中次数
+     **/
+    private long missCount;
+    /**
+     * 因容量不足被淘汰的文档数量
+     **/
+    private long evictionCount;
+    /**
+     * 因过期被移除的文档数量
+     **/
+    private long expiredCount;
+    /**
+     * 因写入被移除的文档数量
+     **/
+    private long invalidationCount;
+    /**
+     * 当前缓存的文档数量
+     **/
+    private int size;
+    /**
+     * 当前缓存占用的预估字节数
+     **/
+    private long weightBytes;
+
+    /**
+     * 命中率
+     *
+     * @return 0 ~ 1
+     */
+    public double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+}
@@ -19,6 +19,27 @@ public class ElasticSearchSearchDTO {
 
     private Map<String, SortOrder> sortOrderMap;
 
+    /**
+     * _source 中需要返回的字段, 支持通配符, 为空时返回全部字段
+     */
+    private String[] includes;
+    /**
+     * _source 中不需要返回的字段, 支持通配符
+     */
+    private String[] excludes;
+    /**
+     * 不返回 _source(只需要 _id、docvalue_fields 时使用)
+     */
+    private boolean fetchSource = true;
+    /**
+     * 从 doc values 中读取的字段(docvalue_fields), 不需要解析 _source, 只适用于开启了 doc_values 的字段(keyword、数值、日期等)
+     */
+    private List<String> docValueFields;
+    /**
+     * stored_fields: _none_, 连同 _source 与 _id 等元数据都不返回,只返回 docvalue_fields
+     */
+    private boolean storedFieldsNone;
+
     public ElasticSearchSearchDTO(List<ElasticSearchConditionDTO> conditionDTOS) {
         this.conditionDTOS = conditionDTOS;
     }
@@ -0,0 +1,71 @@
+package com.xh.es.model.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @description: 异步任务(update_by_query/delete_by_query)的进度
+ * 由 {@link com.xh.es.service.ElasticSearchService#getTask(String)} 通过 _tasks 接口查询,
+ * 分片(slices)执行时为所有子任务的汇总
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Data
+public class ElasticSearchTaskDTO {
+
+    /**
+     * 任务id, 格式为 nodeId:taskNumber
+     **/
+    private String taskId;
+    /**
+     * 任务描述
+     **/
+    private String description;
+    /**
+     * 是否已结束(成功、失败或被取消)
+     **/
+    private boolean completed;
+    /**
+     * 是否被取消
+     **/
+    private boolean cancelled;
+    /**
+     * 需要处理的文档总数
+     **/
+    private long total;
+    private long created;
+    private long updated;
+    private long deleted;
+    /**
+     * 已执行的 scroll 批次
+     **/
+    private long batches;
+    private long versionConflicts;
+    private long noops;
+    /**
+     * 当前的限速, -1 表示不限速
+     **/
+    private float requestsPerSecond;
+    /**
+     * 已运行的毫秒数
+     **/
+    private long runningTimeMillis;
+    /**
+     * 失败信息, 任务结束后才会有
+     **/
+    private List<String> failures = new ArrayList<>();
+
+    /**
+     * 处理进度
+     *
+     * @return 0 ~ 1
+     */
+    public double getProgress() {
+        if (total <= 0) {
+            return completed ? 1 : 0;
+        }
+        return Math.min(1, (double) (created + updated + deleted + versionConflicts + noops) / total);
+    }
+}
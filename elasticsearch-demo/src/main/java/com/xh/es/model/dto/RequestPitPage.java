@@ -0,0 +1,33 @@
+package com.xh.es.model.dto;
+
+import lombok.Data;
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * @description: Point in time + search_after 分页
+ *               第一次查询前打开一个 point in time(PIT),之后每页都基于该时间点的视图查询,与 scroll 一样看不到查询期间的变动;
+ *               与 scroll 不同的是 PIT 只保持段(segment)不被合并删除,不为每个分片保存搜索上下文和排序状态,
+ *               翻页使用 search_after,排序最后追加 _shard_doc 作为唯一的决胜字段,不需要业务上的唯一字段。
+ *               注意: 需要 Elasticsearch 7.10 及以上版本,当前的 RestHighLevelClient 没有 PIT 接口,通过低级客户端请求。
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Data
+public class RequestPitPage extends PageRequest {
+
+    /** PIT 的保持时间, 每次翻页都会续期 **/
+    private TimeValue keepAlive;
+
+    /** 上一次查询最后一个文档的sort,用于下一个查询 **/
+    private Object[] values;
+
+    /** 第一次查询的 from, 跳过已经通过 from-size 取得的结果(from + limit 不能超过 10000),之后的查询使用 search_after **/
+    private int from;
+
+    public static RequestPitPage of(int limit, TimeValue keepAlive) {
+        RequestPitPage requestPitPage = new RequestPitPage();
+        requestPitPage.setLimit(limit);
+        requestPitPage.setKeepAlive(keepAlive);
+        return requestPitPage;
+    }
+}
@@ -0,0 +1,184 @@
+package com.xh.es.service;
+
+import com.xh.es.model.dto.*;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.springframework.data.domain.Page;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 基于 RestHighLevelClient 的 *Async 方法封装的非阻塞 ElasticsearchService
+ * 方法与 {@link ElasticSearchService} 中同名的方法一致,调用时只发出请求,不等待结果,不占用调用方线程
+ * <p>
+ * 1: 返回的 CompletableFuture 调用 cancel 或超过 elasticsearch.async.timeout-millis 时,取消正在执行的 HTTP 请求(包括 scroll 的后续页);
+ * 2: 结果在 es-async- 线程中反序列化后完成,后续的 thenApply 等默认也在该线程中执行,耗时的处理请指定自己的线程池;
+ * 3: 失败时以 ElasticsearchException、IOException、TimeoutException、CancellationException 等异常结束;
+ * 4: 写入同样会移除文档缓存和查询缓存,读取文档时同样使用文档缓存
+ * <p>
+ * 流式写入、逐页遍历、并行导出本身就是按批次推进的,只在 {@link ElasticSearchService} 中提供;
+ * 深分页只使用 scroll, 不支持 point in time(elasticsearch.search.deep-page-strategy 对异步查询不生效)
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+public interface AsyncElasticSearchService<T> {
+
+    /**
+     * 创建文档
+     *
+     * @param var2  入参类(实际文档内容)
+     * @param index 索引
+     * @param id    id标识
+     * @return true 成功
+     */
+    CompletableFuture<Boolean> createDocument(Object var2, String index, String id);
+
+    /**
+     * 创建文档,并返回创建成功的文档内容
+     *
+     * @param var1  返回的对象类型
+     * @param var2  入参类(实际文档内容)
+     * @param index 索引
+     * @param id    id标识
+     * @return null 表示失败
+     */
+    CompletableFuture<T> createDocument(Class<T> var1, Object var2, String index, String id);
+
+    /**
+     * 根据id删除文档
+     *
+     * @param index 索引
+     * @param id    id标识
+     * @return true 成功
+     */
+    CompletableFuture<Boolean> deleteDocument(String index, String id);
+
+    /**
+     * 根据id和 _routing 删除文档
+     *
+     * @param index   索引
+     * @param id      id标识
+     * @param routing 写入时使用的 _routing
+     * @return true 成功
+     */
+    CompletableFuture<Boolean> deleteDocument(String index, String id, String routing);
+
+    /**
+     * 根据多条件删除文档(delete_by_query), 取消时只取消 HTTP 请求,已经在 ES 中执行的删除不会回滚
+     *
+     * @param index         索引
+     * @param conditionDTOS 条件集合
+     * @return 删除数量
+     */
+    CompletableFuture<Long> deleteDocumentByCondition(String index, List<ElasticSearchConditionDTO> conditionDTOS);
+
+    /**
+     * 根据id修改文档(部分更新)
+     *
+     * @param var2  修改的内容
+     * @param index 索引
+     * @param id    id标识
+     * @return true 成功
+     */
+    CompletableFuture<Boolean> updateDocument(Object var2, String index, String id);
+
+    /**
+     * 根据id修改文档(部分更新),并返回修改后的文档
+     *
+     * @param var1  返回的对象类型
+     * @param var2  修改的内容
+     * @param index 索引
+     * @param id    id标识
+     * @return null 表示失败
+     */
+    CompletableFuture<T> updateDocument(Class<T> var1, Object var2, String index, String id);
+
+    /**
+     * 根据id更新文档, 文档不存在时以 var2 创建
+     *
+     * @param var2  修改的内容
+     * @param index 索引
+     * @param id    id标识
+     * @return true 成功(更新或创建)
+     */
+    CompletableFuture<Boolean> upsertDocument(Object var2, String index, String id);
+
+    /**
+     * 根据id更新文档, 文档不存在时以 var2 创建,并返回更新或创建后的文档
+     *
+     * @param var1  返回的对象类型
+     * @param var2  修改的内容
+     * @param index 索引
+     * @param id    id标识
+     * @return null 表示失败
+     */
+    CompletableFuture<T> upsertDocument(Class<T> var1, Object var2, String index, String id);
+
+    /**
+     * 通过索引下的id获取该文档内容
+     *
+     * @param var1  返回的对象类型
+     * @param index 索引
+     * @param id    id
+     * @return T, 不存在时为 null
+     */
+    CompletableFuture<T> getDocument(Class<T> var1, String index, String id);
+
+    /**
+     * 通过索引下的id和 _routing 获取该文档内容
+     * routing 不为 null 时不使用文档缓存
+     *
+     * @param var1    返回的对象类型
+     * @param index   索引
+     * @param id      id
+     * @param routing 写入时使用的 _routing
+     * @return T, 不存在时为 null
+     */
+    CompletableFuture<T> getDocument(Class<T> var1, String index, String id, String routing);
+
+    /**
+     * 通过索引下的 ids 批量获取文档内容(一次 _mget)
+     *
+     * @param var1  返回的对象类型
+     * @param index 索引
+     * @param ids   id 集合
+     * @return Map k:id,v:文档, 按 ids 的顺序排列,不存在的文档不包含在内
+     */
+    CompletableFuture<Map<String, T>> getDocuments(Class<T> var1, String index, Collection<String> ids);
+
+    /**
+     * 根据 searchDto 条件 去查询列表, 分页方式与 {@link ElasticSearchService#getListByCondition(Class, String, ElasticSearchSearchDTO)} 一致:
+     * 第一页同时打开 scroll, 其 total hits 不超过 from-size 上限时剩余部分使用 from-size, 否则从第一页继续 scroll 依次异步请求每一页,
+     * 结束、失败或取消时清除 scroll;
+     * 超过上限时总是使用 scroll, 不支持 elasticsearch.search.deep-page-strategy=pit(PIT 只在 {@link ElasticSearchService} 中提供)
+     *
+     * @param var1      返回的对象类型
+     * @param index     索引
+     * @param searchDto {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @return List<T>
+     */
+    CompletableFuture<List<T>> getListByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto);
+
+    /**
+     * 根据条件进行分页查询, 分页方式与 {@link ElasticSearchService#getPageByCondition(Class, String, ElasticSearchSearchDTO, PageRequest)} 一致
+     *
+     * @param var1        返回的对象类型
+     * @param index       索引
+     * @param esSearchDto {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @param pageRequest {@link RequestFromSizePage}、{@link RequestSearchAfterPage} 或 {@link RequestScrollPage}
+     * @return Page<T>
+     */
+    CompletableFuture<Page<T>> getPageByCondition(Class<T> var1, String index, ElasticSearchSearchDTO esSearchDto, PageRequest pageRequest);
+
+    /**
+     * 获取指定条件下的数据集合数量
+     *
+     * @param index 索引
+     * @param query 查询对象, 一般为 SearchSourceBuilder.queryBuilder
+     * @return long
+     */
+    CompletableFuture<Long> count(String index, QueryBuilder query);
+}
@@ -0,0 +1,42 @@
+package com.xh.es.service;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 BulkProcessor 的常驻写入管道
+ * 调用方逐个提交文档,由管道按 文档数量/字节大小/时间间隔 自动合并为 bulk 提交,
+ * 适用于高频小批量写入的场景,避免每次调用都同步等待一次完整的 bulk 往返
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+public interface ElasticSearchIngestService {
+
+    /**
+     * 提交一个待写入的文档(index 操作),不等待写入结果
+     *
+     * @param var2  入参类(实际文档内容)
+     * @param index 索引
+     * @param id    id标识
+     * @return CompletableFuture 该文档所在 bulk 返回后完成; 该文档写入失败时以异常结束
+     */
+    CompletableFuture<BulkItemResponse> addDocument(Object var2, String index, String id);
+
+    /**
+     * 立即提交管道中已累计的文档
+     */
+    void flush();
+
+    /**
+     * 关闭管道: 提交剩余文档,并等待在途的 bulk 完成
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return true 所有在途 bulk 都已完成
+     * @throws InterruptedException 等待时被中断
+     */
+    boolean close(long timeout, TimeUnit unit) throws InterruptedException;
+}
@@ -5,10 +5,17 @@ import com.xh.es.model.dto.*;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.data.domain.Page;
+import org.springframework.data.util.CloseableIterator;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * 基于 RestHighLevelClient 封装的ElasticsearchService
@@ -53,6 +60,55 @@ public interface ElasticSearchService<T> {
      */
     boolean addBatchDocument(Map<String, Object> var, String index) throws IOException;
 
+    /**
+     * 流式批量创建文档
+     * 从 stream 中按需读取文档并分批提交,不需要提前在内存中组装完整的 Map,
+     * 同一时刻内存中只保留少量在途的 bulk,适用于全量重建索引等大数据量场景
+     *
+     * @param stream      文档流,由调用方负责关闭
+     * @param idExtractor 从文档中获取 _id 的方法
+     * @param index       索引
+     * @param <E>         文档类型
+     * @return boolean true 成功
+     * @throws IOException 异常
+     */
+    <E> boolean addBatchDocument(Stream<E> stream, Function<? super E, String> idExtractor, String index) throws IOException;
+
+    /**
+     * 流式批量创建文档
+     * 从 iterator 中按需读取文档并分批提交,不需要提前在内存中组装完整的 Map
+     *
+     * @param iterator    文档迭代器
+     * @param idExtractor 从文档中获取 _id 的方法
+     * @param index       索引
+     * @param <E>         文档类型
+     * @return boolean true 成功
+     * @throws IOException 异常
+     */
+    <E> boolean addBatchDocument(Iterator<E> iterator, Function<? super E, String> idExtractor, String index) throws IOException;
+
+    /**
+     * 流式批量创建文档,并指定每个文档的 _routing
+     * 开启 elasticsearch.bulk.shard-partition 后,bulk 按 _routing 计算出的目标分片拆分
+     * 注意: 使用自定义 _routing 写入的文档,查询/删除单个文档时需要传入相同的 routing
+     *
+     * @param stream           文档流,由调用方负责关闭
+     * @param idExtractor      从文档中获取 _id 的方法
+     * @param routingExtractor 从文档中获取 _routing 的方法,例如 UserEntity::getUserId
+     * @param index            索引
+     * @param <E>              文档类型
+     * @return boolean true 成功
+     * @throws IOException 异常
+     */
+    <E> boolean addBatchDocument(Stream<E> stream, Function<? super E, String> idExtractor, Function<? super E, String> routingExtractor, String index) throws IOException;
+
+    /**
+     * 获取批量写入的自适应限流指标: 当前并发数、单个 bulk 文档数、在途数量、累计被拒绝的文档数以及最近的调整历史
+     *
+     * @return ElasticSearchBulkLimiterMetricsDTO
+     */
+    ElasticSearchBulkLimiterMetricsDTO getBulkLimiterMetrics();
+
     /**
      * 通过id标识,删除文档,并返回布尔值
      * 不会删除索引
@@ -64,6 +120,17 @@ public interface ElasticSearchService<T> {
      */
     boolean deleteDocument(String index, String id) throws IOException;
 
+    /**
+     * 通过id标识和 _routing,删除文档,并返回布尔值
+     *
+     * @param index   索引
+     * @param id      id标识
+     * @param routing 写入时使用的 _routing
+     * @return true 成功
+     * @throws IOException 异常
+     */
+    boolean deleteDocument(String index, String id, String routing) throws IOException;
+
     /**
      * 根据 ids集合 批量删除文档
      *
@@ -158,8 +225,159 @@ public interface ElasticSearchService<T> {
      */
     boolean updateBatchDocument(String index, Map<String, Object> params) throws IOException;
 
+    /**
+     * 异步按单个条件(term)删除文档,立即返回任务id
+     * 按 elasticsearch.task 配置分片(slices)执行并限速,进度通过 {@link #getTask(String)} 查询
+     *
+     * @param index 索引
+     * @param key   fieldName 字段名称
+     * @param value 字段值
+     * @return String 任务id
+     * @throws IOException 异常
+     */
+    String deleteDocumentAsync(String index, String key, Object value) throws IOException;
+
+    /**
+     * 异步根据多条件删除文档,立即返回任务id
+     * 按 elasticsearch.task 配置分片(slices)执行并限速,进度通过 {@link #getTask(String)} 查询
+     *
+     * @param index         索引
+     * @param conditionDTOS 自定义条件集合
+     * @return String 任务id
+     * @throws IOException 异常
+     */
+    String deleteDocumentByConditionAsync(String index, List<ElasticSearchConditionDTO> conditionDTOS) throws IOException;
+
+    /**
+     * 异步根据多条件更新文档,立即返回任务id
+     * 按 elasticsearch.task 配置分片(slices)执行并限速,进度通过 {@link #getTask(String)} 查询
+     *
+     * @param var2          更新后的文档内容
+     * @param index         索引
+     * @param conditionDTOS 自定义条件集合
+     * @return String 任务id
+     * @throws IOException 异常
+     */
+    String updateDocumentByConditionAsync(Object var2, String index, List<ElasticSearchConditionDTO> conditionDTOS) throws IOException;
+
+    /**
+     * 异步根据 ScriptDto 更新文档,立即返回任务id
+     * 按 elasticsearch.task 配置分片(slices)执行并限速,进度通过 {@link #getTask(String)} 查询
+     *
+     * @param scriptDto     {@link ScriptDTO} 对象
+     * @param index         索引
+     * @param conditionDTOS 自定义条件集合
+     * @return String 任务id
+     * @throws IOException 异常
+     */
+    String updateDocumentByConditionAsync(ScriptDTO scriptDto, String index, List<ElasticSearchConditionDTO> conditionDTOS) throws IOException;
+
+    /**
+     * 查询异步任务的进度
+     * 任务结束后结果保存在 .tasks 索引中,同样可以查询
+     *
+     * @param taskId 任务id
+     * @return ElasticSearchTaskDTO
+     * @throws IOException 异常,任务不存在时为 404
+     */
+    ElasticSearchTaskDTO getTask(String taskId) throws IOException;
+
+    /**
+     * 取消异步任务,已处理的文档不会回滚
+     *
+     * @param taskId 任务id
+     * @return boolean true 已取消, false 任务不存在或已结束
+     * @throws IOException 异常
+     */
+    boolean cancelTask(String taskId) throws IOException;
+
+    /**
+     * 带版本号的批量更新(乐观锁),多个写入方并发修改同一批文档时不需要加全局锁
+     * 1: 通过 mget 批量读取当前文档及其 _seq_no/_primary_term;
+     * 2: 调用 merge 得到新的完整文档,写入时携带 if_seq_no/if_primary_term;
+     * 3: 出现版本冲突(409)的文档重新读取、合并,只重试冲突的文档
+     * <p>
+     * merge 的入参为 _id 和当前文档,文档不存在时当前文档为 null,此时以 create 方式写入;
+     * merge 返回 null 表示不修改该文档
+     * merge 可能因冲突被同一文档多次调用,不要在其中做有副作用的操作
+     *
+     * @param var1  文档的对象类型
+     * @param index 索引
+     * @param ids   需要更新的 _id 集合
+     * @param merge 根据当前文档生成新文档的方法
+     * @return boolean true 全部成功
+     * @throws IOException 异常
+     */
+    boolean updateBatchDocument(Class<T> var1, String index, Collection<String> ids, BiFunction<String, T, Object> merge) throws IOException;
+
+    /**
+     * 根据id更新文档,文档不存在时以修改内容创建(doc_as_upsert),并返回布尔值
+     * 调用方不需要先判断文档是否存在
+     *
+     * @param var2  修改的内容文档
+     * @param index 索引
+     * @param id    id标识
+     * @return true 成功(更新或创建)
+     * @throws IOException 异常
+     */
+    boolean upsertDocument(Object var2, String index, String id) throws IOException;
+
+    /**
+     * 根据id更新文档,文档不存在时以修改内容创建(doc_as_upsert),
+     * 并通过 fetchSource 在同一个请求中返回更新后的完整文档,不需要再 get 一次
+     *
+     * @param var1  返回的对象类型
+     * @param var2  修改的内容文档
+     * @param index 索引
+     * @param id    id标识
+     * @return T 更新后的文档, null 表示失败
+     * @throws IOException 异常
+     */
+    T upsertDocument(Class<T> var1, Object var2, String index, String id) throws IOException;
+
+    /**
+     * 根据 ScriptDto 更新文档,文档不存在时写入 upsert 作为初始文档(不执行脚本),
+     * 并通过 fetchSource 在同一个请求中返回更新后的完整文档
+     * 适用于 计数累加 等 读取-修改-写入 的场景,一次请求完成
+     *
+     * @param var1      返回的对象类型
+     * @param scriptDto {@link ScriptDTO} 对象,文档存在时执行的脚本
+     * @param upsert    文档不存在时写入的初始文档
+     * @param index     索引
+     * @param id        id标识
+     * @return T 更新后的文档, null 表示失败
+     * @throws IOException 异常
+     */
+    T upsertDocument(Class<T> var1, ScriptDTO scriptDto, Object upsert, String index, String id) throws IOException;
+
+    /**
+     * 根据Map -> k组成的id进行批量 upsert(doc_as_upsert)
+     * Map 的 k 表示文档的 _id,
+     * Map 的 v 表示修改的内容,文档不存在时作为完整文档写入
+     *
+     * @param index  索引
+     * @param params 包含id和对应文档内容的Map
+     * @return boolean true 全部成功
+     * @throws IOException 异常
+     */
+    boolean upsertBatchDocument(String index, Map<String, Object> params) throws IOException;
+
+    /**
+     * 根据Map -> k组成的id进行批量 upsert(doc_as_upsert),
+     * 并通过 fetchSource 在同一个 bulk 中返回每个文档更新后的内容
+     *
+     * @param var1   返回的对象类型
+     * @param index  索引
+     * @param params 包含id和对应文档内容的Map
+     * @return Map k:id,v:更新后的文档, 失败的文档不包含在内
+     * @throws IOException 异常
+     */
+    Map<String, T> upsertBatchDocument(Class<T> var1, String index, Map<String, Object> params) throws IOException;
+
     /**
      * 通过索引下的id获取该文档内容
+     * 开启 elasticsearch.loader 时,并发的读取会合并为一次 _mget
+     * 开启 elasticsearch.cache 时优先读取本地缓存,本服务的写入会移除对应的缓存
      *
      * @param var1  返回的对象类型
      * @param index 索引
@@ -169,6 +387,31 @@ public interface ElasticSearchService<T> {
      */
     T getDocument(Class<T> var1, String index, String id) throws IOException;
 
+    /**
+     * 通过索引下的id和 _routing 获取该文档内容
+     * 使用自定义 _routing 写入的文档必须通过该方法查询, routing 不为 null 时不使用文档缓存
+     *
+     * @param var1    返回的对象类型
+     * @param index   索引
+     * @param id      id
+     * @param routing 写入时使用的 _routing
+     * @return T
+     * @throws IOException 异常
+     */
+    T getDocument(Class<T> var1, String index, String id, String routing) throws IOException;
+
+    /**
+     * 通过索引下的 ids 批量获取文档内容
+     * 与同一时间窗口内其它线程的 getDocument 一起按 elasticsearch.loader 配置合并为少量 _mget
+     *
+     * @param var1  返回的对象类型
+     * @param index 索引
+     * @param ids   id 集合
+     * @return Map k:id,v:文档, 按 ids 的顺序排列,不存在的文档不包含在内
+     * @throws IOException 异常
+     */
+    Map<String, T> getDocuments(Class<T> var1, String index, Collection<String> ids) throws IOException;
+
     /**
      * 根据 map 条件查询列表
      * 当前查询操作条件均为 and term
@@ -209,6 +452,7 @@ public interface ElasticSearchService<T> {
     /**
      * 根据 searchDto 条件 去查询列表(包含拼接条件与排序)
      * 因为es不支持查询全部,必须的分页查询,所以查询所有也是用的分页
+     * 全部结果都会放入 List, 结果集很大时使用 {@link #getStreamByCondition(Class, String, ElasticSearchSearchDTO)}
      *
      * @param var1      返回的对象类型
      * @param index     索引
@@ -218,6 +462,102 @@ public interface ElasticSearchService<T> {
      */
     List<T> getListByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto) throws IOException;
 
+    /**
+     * 根据 searchDto 条件 逐页(scroll 或 PIT, 由 elasticsearch.search.deep-page-strategy 决定)查询全部结果
+     * 遍历到哪一页才查询哪一页,同一时刻内存中只有一页结果;使用完后需要关闭(try-with-resources),关闭时清除 scroll 上下文或关闭 PIT
+     *
+     * @param var1      返回的对象类型
+     * @param index     索引
+     * @param searchDto {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @return Stream<T>
+     * @throws IOException 异常
+     */
+    Stream<T> getStreamByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto) throws IOException;
+
+    /**
+     * 根据 searchDto 条件 逐页查询
+     * 遍历中查询出现异常时抛出 UncheckedIOException,并释放 scroll 上下文或 PIT
+     *
+     * @param var1        返回的对象类型
+     * @param index       索引
+     * @param searchDto   {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @param pageRequest {@link RequestScrollPage}、{@link RequestSearchAfterPage} 或 {@link RequestPitPage}, limit 为每页的数量
+     * @return CloseableIterator<T> 使用完后需要关闭
+     * @throws IOException 异常
+     */
+    CloseableIterator<T> getIteratorByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto, PageRequest pageRequest) throws IOException;
+
+    /**
+     * 根据 searchDto 条件 查询全部结果的 _id, 不返回 _source, 使用 scroll 逐页查询
+     *
+     * @param index     索引
+     * @param searchDto {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @return List<String> _id
+     * @throws IOException 异常
+     */
+    List<String> getIdsByCondition(String index, ElasticSearchSearchDTO searchDto) throws IOException;
+
+    /**
+     * 根据 searchDto 条件 查询全部结果的 _id, 不返回 _source
+     *
+     * @param index       索引
+     * @param searchDto   {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @param pageRequest {@link RequestScrollPage} 或 {@link RequestSearchAfterPage}, limit 为每页的数量
+     * @return List<String> _id
+     * @throws IOException 异常
+     */
+    List<String> getIdsByCondition(String index, ElasticSearchSearchDTO searchDto, PageRequest pageRequest) throws IOException;
+
+    /**
+     * 根据 searchDto 条件 查询全部结果中一个数值字段的值(例如 userId), 使用 scroll 逐页查询
+     * 从 doc values 中读取(docvalue_fields + stored_fields: _none_),不返回 _source 和 _id, 结果直接放入 long[] 不装箱;
+     * 字段不是整数类型(例如 date、keyword)时抛出 RuntimeException
+     *
+     * @param index     索引
+     * @param searchDto {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @param field     开启了 doc_values 的整数字段
+     * @return long[] 没有该字段的文档跳过, 多值字段的每个值都会放入
+     * @throws IOException 异常
+     */
+    long[] getLongValuesByCondition(String index, ElasticSearchSearchDTO searchDto, String field) throws IOException;
+
+    /**
+     * 根据 searchDto 条件 查询全部结果中一个数值字段的值(例如 userId)
+     *
+     * @param index       索引
+     * @param searchDto   {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @param field       开启了 doc_values 的整数字段
+     * @param pageRequest {@link RequestScrollPage} 或 {@link RequestSearchAfterPage}, limit 为每页的数量
+     * @return long[] 没有该字段的文档跳过, 多值字段的每个值都会放入
+     * @throws IOException 异常
+     */
+    long[] getLongValuesByCondition(String index, ElasticSearchSearchDTO searchDto, String field, PageRequest pageRequest) throws IOException;
+
+    /**
+     * 根据 searchDto 条件 并行(sliced scroll)导出全部结果
+     * 切片数默认与索引的主分片数一致,每个切片在导出线程中 scroll 并转换对象,不保证顺序
+     *
+     * @param var1      返回的对象类型
+     * @param index     索引
+     * @param searchDto {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @param consumer  文档回调, 在导出线程中执行, 需要线程安全
+     * @return 导出的文档数量
+     * @throws IOException 异常
+     */
+    long exportByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto, Consumer<? super T> consumer) throws IOException;
+
+    /**
+     * 根据 searchDto 条件 并行(sliced scroll)导出全部结果, 各切片的结果合并为一个 Stream
+     * 使用完后需要关闭(try-with-resources),提前关闭时各切片停止并清除 scroll 上下文
+     *
+     * @param var1      返回的对象类型
+     * @param index     索引
+     * @param searchDto {@link ElasticSearchSearchDTO} 根据该对象进行组合
+     * @return Stream<T> 不保证顺序
+     * @throws IOException 异常
+     */
+    Stream<T> getParallelStreamByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto) throws IOException;
+
     /**
      * 根据条件进行分页查询
      * {@link PageRequest} 三种分页方案, 资料博客: https://blog.csdn.net/pony_maggie/article/details/105478557
@@ -0,0 +1,87 @@
+package com.xh.es.service.async;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.common.CheckedConsumer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * 一次异步操作的结果, 一次操作可以包含多个依次执行的 HTTP 请求(例如 scroll 的每一页)
+ * <p>
+ * 1: 调用方 cancel、超时或任一请求失败时取消当前正在执行的 HTTP 请求,不再发出后续请求;
+ * 2: 请求的结果在 executor 中处理(反序列化、发出下一个请求),不占用客户端的 IO 线程;
+ * 3: 取消只作用于这个对象本身, 调用方通过 thenApply 等得到的新对象 cancel 时不会向上传递,需要取消时保留这个对象
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+public class ElasticSearchAsyncOperation<R> extends CompletableFuture<R> {
+
+    private final Executor executor;
+    private volatile Cancellable current;
+    private volatile ScheduledFuture<?> timeout;
+
+    public ElasticSearchAsyncOperation(Executor executor, ScheduledExecutorService scheduler, long timeoutMillis) {
+        this.executor = executor;
+        super.whenComplete((r, e) -> {
+            ScheduledFuture<?> scheduled = timeout;
+            if (null != scheduled) {
+                scheduled.cancel(false);
+            }
+            if (null != e) {
+                this.cancelCurrent();
+            }
+        });
+        if (timeoutMillis > 0) {
+            this.timeout = scheduler.schedule(() -> this.completeExceptionally(new TimeoutException("ES异步请求超过" + timeoutMillis + "ms未完成")),
+                    timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 发出一个请求, 返回后在 executor 中执行 onResponse;已结束(取消、超时、失败)时不再发出
+     * onResponse 中可以完成本操作或者继续发出下一个请求, 抛出的异常会结束本操作
+     *
+     * @param send       发出请求, 返回 Cancellable
+     * @param onResponse 请求结果处理
+     * @param <S>        请求结果的类型
+     */
+    public <S> void request(Function<ActionListener<S>, Cancellable> send, CheckedConsumer<S, Exception> onResponse) {
+        if (this.isDone()) {
+            return;
+        }
+        try {
+            current = send.apply(ActionListener.wrap(response -> executor.execute(() -> {
+                if (this.isDone()) {
+                    return;
+                }
+                try {
+                    onResponse.accept(response);
+                } catch (Exception e) {
+                    this.completeExceptionally(e);
+                }
+            }), this::completeExceptionally));
+        } catch (RuntimeException e) {
+            this.completeExceptionally(e);
+            return;
+        }
+        if (this.isDone()) {
+            // 发出请求的同时被取消或超时
+            this.cancelCurrent();
+        }
+    }
+
+    private void cancelCurrent() {
+        Cancellable cancellable = current;
+        if (null != cancellable) {
+            cancellable.cancel();
+        }
+    }
+}
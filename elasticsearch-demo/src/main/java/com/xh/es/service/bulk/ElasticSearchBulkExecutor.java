@@ -0,0 +1,455 @@
+package com.xh.es.service.bulk;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.model.dto.ElasticSearchBulkLimiterMetricsDTO;
+import com.xh.es.model.dto.ElasticSearchBulkResultDTO;
+import com.xh.es.service.cache.ElasticSearchDocumentCache;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * bulk 执行器
+ * 逐个检查 BulkItemResponse,只把可重试(429 写线程池已满、503 分片暂时不可用)的文档重新组成 bulk 提交,
+ * 整个请求被拒绝(429/503)时重发整个请求,
+ * 重试间隔为带随机抖动的指数退避,不会因为少量被拒绝的文档而重发整批数据
+ * <p>
+ * 数据量较大时按 文档数量/预估字节大小 拆分为多个子 bulk,以有限的并发提交,
+ * 子请求按需生成,同一时刻内存中最多只有 并发数 + 1 个子 bulk
+ * <p>
+ * 子 bulk 的并发数和文档数由 {@link ElasticSearchBulkLimiter} 根据集群的拒绝情况动态调整
+ * <p>
+ * 开启 shardPartition 后,通过 {@link ElasticSearchShardRouter} 按目标分片分组,每个子 bulk 只发往一个分片,
+ * 此时内存中最多有 分片数 个未满的子 bulk
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component
+public class ElasticSearchBulkExecutor {
+
+    private static final String REJECTED_EXECUTION = "es_rejected_execution_exception";
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ElasticSearchProperties elasticSearchProperties;
+    private final ElasticSearchBulkLimiter elasticSearchBulkLimiter;
+    private final ElasticSearchShardRouter elasticSearchShardRouter;
+    private final ElasticSearchDocumentCache elasticSearchDocumentCache;
+    private final ExecutorService executorService;
+
+    public ElasticSearchBulkExecutor(RestHighLevelClient restHighLevelClient, ElasticSearchProperties elasticSearchProperties,
+                                     ElasticSearchBulkLimiter elasticSearchBulkLimiter, ElasticSearchShardRouter elasticSearchShardRouter,
+                                     ElasticSearchDocumentCache elasticSearchDocumentCache) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.elasticSearchProperties = elasticSearchProperties;
+        this.elasticSearchBulkLimiter = elasticSearchBulkLimiter;
+        this.elasticSearchShardRouter = elasticSearchShardRouter;
+        this.elasticSearchDocumentCache = elasticSearchDocumentCache;
+        this.executorService = Executors.newFixedThreadPool(elasticSearchProperties.getBulk().getMaxParallelism(),
+                ThreadUtil.newNamedThreadFactory("es-bulk-", true));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executorService.shutdown();
+    }
+
+    /**
+     * 将文档按 文档数量/预估字节大小 拆分为多个子 bulk,以有限的并发执行,并汇总每个子 bulk 的结果
+     *
+     * @param requests 待写入的文档,按需迭代,不要求提前全部生成
+     * @return ElasticSearchBulkResultDTO 所有子 bulk 汇总后的结果
+     * @throws IOException 异常,任一子 bulk 请求失败时,在其余子 bulk 结束后抛出
+     */
+    public ElasticSearchBulkResultDTO execute(Iterator<? extends DocWriteRequest<?>> requests) throws IOException {
+        return this.execute(requests, true);
+    }
+
+    /**
+     * 将文档按 文档数量/预估字节大小 拆分为多个子 bulk,以有限的并发执行,并汇总每个子 bulk 的结果
+     * 已完成的子 bulk 会被及时汇总,不会保留到全部提交结束
+     *
+     * @param requests         待写入的文档,按需迭代,不要求提前全部生成
+     * @param keepSucceededIds 是否保留成功的 _id,数据量很大(流式写入)时传 false,只保留成功数量
+     * @return ElasticSearchBulkResultDTO 所有子 bulk 汇总后的结果
+     * @throws IOException 异常,任一子 bulk 请求失败时,在其余子 bulk 结束后抛出
+     */
+    public ElasticSearchBulkResultDTO execute(Iterator<? extends DocWriteRequest<?>> requests, boolean keepSucceededIds) throws IOException {
+        return this.execute(requests, keepSucceededIds, null);
+    }
+
+    /**
+     * 将文档按 文档数量/预估字节大小 拆分为多个子 bulk,以有限的并发执行,并汇总每个子 bulk 的结果
+     * 每个写入成功的文档都会回调 onSucceeded,用于读取 bulk 中随写入一起返回的内容(例如 upsert 的 fetchSource)
+     *
+     * @param requests         待写入的文档,按需迭代,不要求提前全部生成
+     * @param keepSucceededIds 是否保留成功的 _id,数据量很大(流式写入)时传 false,只保留成功数量
+     * @param onSucceeded      写入成功的文档回调,在 bulk 线程中执行,需要线程安全,可以为 null
+     * @return ElasticSearchBulkResultDTO 所有子 bulk 汇总后的结果
+     * @throws IOException 异常,任一子 bulk 请求失败时,在其余子 bulk 结束后抛出
+     */
+    public ElasticSearchBulkResultDTO execute(Iterator<? extends DocWriteRequest<?>> requests, boolean keepSucceededIds,
+                                              Consumer<BulkItemResponse> onSucceeded) throws IOException {
+        return this.execute(requests, keepSucceededIds, onSucceeded, null);
+    }
+
+    /**
+     * 将文档按 文档数量/预估字节大小 拆分为多个子 bulk,以有限的并发执行,并汇总每个子 bulk 的结果
+     * 重试后仍失败的文档回调 onFailed,参数为传入的请求对象本身, 同一个 _id 出现在多个索引或多次写入中时也能准确对应
+     *
+     * @param requests         待写入的文档,按需迭代,不要求提前全部生成
+     * @param keepSucceededIds 是否保留成功的 _id,数据量很大(流式写入)时传 false,只保留成功数量
+     * @param onSucceeded      写入成功的文档回调,在 bulk 线程中执行,需要线程安全,可以为 null
+     * @param onFailed         最终失败的文档回调,在 bulk 线程中执行,需要线程安全,可以为 null
+     * @return ElasticSearchBulkResultDTO 所有子 bulk 汇总后的结果
+     * @throws IOException 异常,任一子 bulk 请求失败时,在其余子 bulk 结束后抛出
+     */
+    public ElasticSearchBulkResultDTO execute(Iterator<? extends DocWriteRequest<?>> requests, boolean keepSucceededIds,
+                                              Consumer<BulkItemResponse> onSucceeded,
+                                              BiConsumer<DocWriteRequest<?>, BulkItemResponse.Failure> onFailed) throws IOException {
+        long maxBytes = elasticSearchProperties.getBulk().getSizeMb() * 1024 * 1024;
+        Aggregator aggregator = new Aggregator(keepSucceededIds);
+        Partitioner partitioner = new Partitioner(elasticSearchProperties.getBulk().isShardPartition() ? elasticSearchShardRouter : null);
+        // 未开启按分片拆分时只有一个分组
+        Map<String, BulkRequest> chunks = new HashMap<>();
+        try {
+            while (requests.hasNext()) {
+                DocWriteRequest<?> request = requests.next();
+                String key = partitioner.partition(request);
+                BulkRequest chunk = chunks.computeIfAbsent(key, k -> new BulkRequest());
+                chunk.add(request);
+                if (chunk.numberOfActions() >= elasticSearchBulkLimiter.getBatchSize() || chunk.estimatedSizeInBytes() >= maxBytes) {
+                    aggregator.add(this.submit(chunk, onSucceeded, onFailed));
+                    chunks.remove(key);
+                }
+            }
+            for (BulkRequest chunk : chunks.values()) {
+                aggregator.add(this.submit(chunk, onSucceeded, onFailed));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待提交子 bulk 时被中断");
+        }
+        return aggregator.await();
+    }
+
+    /**
+     * 获取并发许可后异步提交子 bulk,许可在子 bulk 结束后释放
+     */
+    private CompletableFuture<ElasticSearchBulkResultDTO> submit(BulkRequest chunk, Consumer<BulkItemResponse> onSucceeded,
+                                                                BiConsumer<DocWriteRequest<?>, BulkItemResponse.Failure> onFailed) throws InterruptedException {
+        elasticSearchBulkLimiter.acquire();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return this.execute(chunk, onSucceeded, onFailed);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    elasticSearchBulkLimiter.release();
+                }
+            }, executorService);
+        } catch (RuntimeException e) {
+            elasticSearchBulkLimiter.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 按 索引+分片 对文档分组,同一次 execute 中每个索引只获取一次路由信息
+     */
+    private static class Partitioner {
+
+        private final ElasticSearchShardRouter router;
+        private final Map<String, Optional<ElasticSearchShardRouter.Routing>> routings = new HashMap<>();
+
+        Partitioner(ElasticSearchShardRouter router) {
+            this.router = router;
+        }
+
+        String partition(DocWriteRequest<?> request) {
+            if (null == router || null == request.id()) {
+                return "";
+            }
+            Optional<ElasticSearchShardRouter.Routing> routing = routings.computeIfAbsent(request.index(),
+                    index -> Optional.ofNullable(router.getRouting(index)));
+            return routing.map(r -> request.index() + "#" + r.shard(request.id(), request.routing())).orElse("");
+        }
+    }
+
+    /**
+     * 按提交顺序汇总子 bulk 的结果
+     */
+    private static class Aggregator {
+
+        private final Deque<CompletableFuture<ElasticSearchBulkResultDTO>> futures = new ArrayDeque<>();
+        private final ElasticSearchBulkResultDTO result = new ElasticSearchBulkResultDTO();
+        private final boolean keepSucceededIds;
+        private IOException exception;
+
+        Aggregator(boolean keepSucceededIds) {
+            this.keepSucceededIds = keepSucceededIds;
+        }
+
+        void add(CompletableFuture<ElasticSearchBulkResultDTO> future) throws InterruptedIOException {
+            futures.addLast(future);
+            while (!futures.isEmpty() && futures.peekFirst().isDone()) {
+                this.collect(futures.pollFirst());
+            }
+        }
+
+        ElasticSearchBulkResultDTO await() throws IOException {
+            while (!futures.isEmpty()) {
+                this.collect(futures.pollFirst());
+            }
+            if (null != exception) {
+                throw exception;
+            }
+            return result;
+        }
+
+        private void collect(CompletableFuture<ElasticSearchBulkResultDTO> future) throws InterruptedIOException {
+            try {
+                ElasticSearchBulkResultDTO chunkResult = future.get();
+                if (!keepSucceededIds) {
+                    chunkResult.getSucceededIds().clear();
+                }
+                result.merge(chunkResult);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待子 bulk 结果时被中断");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                IOException ioException = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                if (null == exception) {
+                    exception = ioException;
+                } else {
+                    exception.addSuppressed(ioException);
+                }
+            }
+        }
+    }
+
+    /**
+     * 执行 bulk,并对可重试的文档进行重试
+     *
+     * @param bulkRequest bulk 请求
+     * @return ElasticSearchBulkResultDTO 按 _id 区分的执行结果
+     * @throws IOException 异常
+     */
+    public ElasticSearchBulkResultDTO execute(BulkRequest bulkRequest) throws IOException {
+        return this.execute(bulkRequest, null);
+    }
+
+    /**
+     * 执行 bulk,并对可重试的文档进行重试
+     *
+     * @param bulkRequest bulk 请求
+     * @param onSucceeded 写入成功的文档回调,可以为 null
+     * @return ElasticSearchBulkResultDTO 按 _id 区分的执行结果
+     * @throws IOException 异常
+     */
+    public ElasticSearchBulkResultDTO execute(BulkRequest bulkRequest, Consumer<BulkItemResponse> onSucceeded) throws IOException {
+        return this.execute(bulkRequest, onSucceeded, null);
+    }
+
+    /**
+     * 执行 bulk,并对可重试的文档进行重试
+     *
+     * @param bulkRequest bulk 请求
+     * @param onSucceeded 写入成功的文档回调,可以为 null
+     * @param onFailed    最终失败的文档回调(请求对象本身 + 失败原因),可以为 null
+     * @return ElasticSearchBulkResultDTO 按 _id 区分的执行结果
+     * @throws IOException 异常
+     */
+    public ElasticSearchBulkResultDTO execute(BulkRequest bulkRequest, Consumer<BulkItemResponse> onSucceeded,
+                                              BiConsumer<DocWriteRequest<?>, BulkItemResponse.Failure> onFailed) throws IOException {
+        ElasticSearchProperties.Bulk bulk = elasticSearchProperties.getBulk();
+        ElasticSearchBulkResultDTO result = new ElasticSearchBulkResultDTO();
+        BulkRequest current = bulkRequest;
+        for (int attempt = 0; ; attempt++) {
+            BulkResponse bulkResponse;
+            try {
+                bulkResponse = this.bulk(current);
+            } catch (ElasticsearchStatusException e) {
+                // 整个请求被拒绝(429)或集群暂时不可用(503)时,以同样的退避重发整个请求
+                if (!isRetryable(e.status()) || attempt >= bulk.getMaxRetries()) {
+                    throw e;
+                }
+                current.requests().forEach(request -> result.getRetriedIds().add(request.id()));
+                long delay = this.backoff(attempt);
+                log.warn("bulk 请求整体失败({}),{}ms 后进行第{}次重试", e.status(), delay, attempt + 1);
+                this.sleep(delay);
+                continue;
+            }
+            BulkRequest retryRequest = new BulkRequest();
+            retryRequest.setRefreshPolicy(current.getRefreshPolicy());
+            retryRequest.timeout(current.timeout());
+            List<DocWriteRequest<?>> requests = current.requests();
+            BulkItemResponse[] items = bulkResponse.getItems();
+            // 被拒绝的文档无论是否还会重试都计入限流器,最后一次重试仍被拒绝时同样说明集群过载
+            int rejected = 0;
+            for (int i = 0; i < items.length; i++) {
+                BulkItemResponse item = items[i];
+                if (item.isFailed() && isRetryable(item)) {
+                    rejected++;
+                }
+                if (!item.isFailed()) {
+                    result.setSucceededCount(result.getSucceededCount() + 1);
+                    result.getSucceededIds().add(item.getId());
+                    if (null != onSucceeded) {
+                        onSucceeded.accept(item);
+                    }
+                } else if (isRetryable(item) && attempt < bulk.getMaxRetries()) {
+                    result.getRetriedIds().add(item.getId());
+                    retryRequest.add(requests.get(i));
+                } else {
+                    result.getFailedItems().put(item.getId(), item.getFailure());
+                    if (null != onFailed) {
+                        onFailed.accept(requests.get(i), item.getFailure());
+                    }
+                }
+            }
+            elasticSearchBulkLimiter.record(bulkResponse.getTook().millis(), rejected);
+            if (retryRequest.numberOfActions() == 0) {
+                break;
+            }
+            long delay = this.backoff(attempt);
+            log.warn("bulk 中有{}个文档被拒绝,{}ms 后进行第{}次重试", retryRequest.numberOfActions(), delay, attempt + 1);
+            this.sleep(delay);
+            current = retryRequest;
+        }
+        if (!result.isSuccess()) {
+            log.error("bulk 执行完成,成功:{},重试过:{},失败:{}", result.getSucceededCount(), result.getRetriedIds().size(), result.getFailedItems().keySet());
+        }
+        return result;
+    }
+
+    /**
+     * 当前的 bulk 限流指标与调整历史
+     *
+     * @return ElasticSearchBulkLimiterMetricsDTO
+     */
+    public ElasticSearchBulkLimiterMetricsDTO getLimiterMetrics() {
+        return elasticSearchBulkLimiter.getMetrics();
+    }
+
+    /**
+     * 按顺序执行一个 bulk, 不对单个文档重试
+     * 只重发被拒绝的文档时,它会排在同一文档后面已经成功的写入之后执行(例如 index X 被拒绝、随后的 delete X 成功,重试后 X 又被写回);
+     * 需要保持写入顺序的调用方(例如 spool 回放)从第一个暂时性失败的文档开始整体重放
+     *
+     * @param bulkRequest bulk 请求
+     * @return BulkResponse 按 {@link BulkItemResponse#getItemId()} 与请求中的位置对应
+     * @throws IOException 异常, 整个请求失败时抛出
+     */
+    public BulkResponse executeOrdered(BulkRequest bulkRequest) throws IOException {
+        BulkResponse bulkResponse = this.bulk(bulkRequest);
+        int rejected = 0;
+        for (BulkItemResponse item : bulkResponse.getItems()) {
+            if (item.isFailed() && isRetryable(item)) {
+                rejected++;
+            }
+        }
+        elasticSearchBulkLimiter.record(bulkResponse.getTook().millis(), rejected);
+        return bulkResponse;
+    }
+
+    /**
+     * 提交 bulk, 整个请求被拒绝(429)或集群暂时不可用(503)时同样计入限流器
+     * 结束后移除涉及文档的缓存,部分失败或请求异常时文档同样可能已被修改
+     */
+    private BulkResponse bulk(BulkRequest bulkRequest) throws IOException {
+        long start = System.currentTimeMillis();
+        try {
+            return restHighLevelClient.bulk(bulkRequest, RequestOptions.DEFAULT);
+        } catch (ElasticsearchStatusException e) {
+            if (isRetryable(e.status())) {
+                elasticSearchBulkLimiter.record(System.currentTimeMillis() - start, bulkRequest.numberOfActions());
+            }
+            throw e;
+        } finally {
+            bulkRequest.requests().forEach(elasticSearchDocumentCache::invalidate);
+        }
+    }
+
+    /**
+     * 是否是可以重试的失败: 429 表示写线程池队列已满(EsRejectedExecutionException),503 表示分片暂时不可用(unavailable_shards),
+     * 稍后重试即可; 其它状态下原因为 es_rejected_execution_exception 的同样重试
+     *
+     * @param item bulk 中单个文档的返回
+     * @return true 可以重试
+     */
+    private boolean isRetryable(BulkItemResponse item) {
+        if (isRetryable(item.status())) {
+            return true;
+        }
+        String message = item.getFailureMessage();
+        return null != message && message.contains(REJECTED_EXECUTION);
+    }
+
+    private static boolean isRetryable(RestStatus status) {
+        return RestStatus.TOO_MANY_REQUESTS.equals(status) || RestStatus.SERVICE_UNAVAILABLE.equals(status);
+    }
+
+    /**
+     * 重试用尽后仍失败的文档是否是暂时性失败: 429、503 等 5xx,集群恢复后可以重新写入;
+     * 其余(mapping、解析错误等 4xx)重新写入也会失败
+     *
+     * @param failure bulk 中单个文档的失败原因
+     * @return true 暂时性失败
+     */
+    static boolean isTransient(BulkItemResponse.Failure failure) {
+        return RestStatus.TOO_MANY_REQUESTS.equals(failure.getStatus()) || failure.getStatus().getStatus() >= 500;
+    }
+
+    /**
+     * 第 attempt 次重试前的等待时间: 指数增长,并在 [delay/2, delay] 之间随机抖动,避免多个客户端同时重试
+     *
+     * @param attempt 已经执行的次数(从0开始)
+     * @return 毫秒
+     */
+    private long backoff(int attempt) {
+        ElasticSearchProperties.Bulk bulk = elasticSearchProperties.getBulk();
+        long delay = Math.min(bulk.getRetryMaxMillis(), bulk.getRetryInitialMillis() << Math.min(attempt, 20));
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    private void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("bulk 重试等待时被中断");
+        }
+    }
+}
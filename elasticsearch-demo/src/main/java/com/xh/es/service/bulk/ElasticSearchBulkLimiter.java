@@ -0,0 +1,167 @@
+package com.xh.es.service.bulk;
+
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.model.dto.ElasticSearchBulkLimiterMetricsDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * bulk 自适应限流器(AIMD: 加法增大,乘法减小)
+ * 1: 一轮(当前并发数个)bulk 都没有被拒绝且耗时低于目标值时,并发数 +1,单个 bulk 文档数 +minActions;
+ * 2: 出现 429(EsRejectedExecutionException)时,并发数和单个 bulk 文档数减半,
+ * 一个目标耗时周期内只减一次,避免同一批在途 bulk 的拒绝被重复计算
+ * <p>
+ * 多个写入端共用一个集群时,各自根据集群的拒绝情况收缩,从而不需要手动调整静态的并发和批大小
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component
+public class ElasticSearchBulkLimiter {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<ElasticSearchBulkLimiterMetricsDTO.Adjustment> history = new ArrayDeque<>();
+
+    private final ElasticSearchProperties.Bulk bulk;
+
+    private int limit;
+    private int batchSize;
+    private int inFlight;
+    private int successes;
+    private long lastDecreaseNanos;
+    private long totalRejected;
+
+    public ElasticSearchBulkLimiter(ElasticSearchProperties elasticSearchProperties) {
+        this.bulk = elasticSearchProperties.getBulk();
+        this.limit = bulk.getParallelism();
+        this.batchSize = bulk.getActions();
+        this.lastDecreaseNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(bulk.getTargetLatencyMillis());
+    }
+
+    /**
+     * 获取一个并发许可,当前在途 bulk 达到上限时阻塞
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= limit) {
+                available.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放一个并发许可
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录一次 bulk 的执行情况,并据此调整并发数和单个 bulk 文档数
+     *
+     * @param latencyMillis bulk 耗时
+     * @param rejected      被拒绝(429)的文档数量, 整个 bulk 被拒绝时传入该 bulk 的文档数量
+     */
+    public void record(long latencyMillis, int rejected) {
+        lock.lock();
+        try {
+            totalRejected += rejected;
+            if (!bulk.isAdaptive()) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (rejected > 0) {
+                successes = 0;
+                if (now - lastDecreaseNanos < TimeUnit.MILLISECONDS.toNanos(bulk.getTargetLatencyMillis())) {
+                    return;
+                }
+                lastDecreaseNanos = now;
+                this.adjust(Math.max(bulk.getMinParallelism(), limit / 2),
+                        Math.max(bulk.getMinActions(), batchSize / 2),
+                        "出现" + rejected + "个被拒绝的文档");
+            } else if (latencyMillis <= bulk.getTargetLatencyMillis()) {
+                if (++successes < limit) {
+                    return;
+                }
+                successes = 0;
+                this.adjust(Math.min(bulk.getMaxParallelism(), limit + 1),
+                        Math.min(bulk.getMaxActions(), batchSize + bulk.getMinActions()),
+                        "一轮 bulk 耗时均低于" + bulk.getTargetLatencyMillis() + "ms");
+            } else {
+                successes = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(int newLimit, int newBatchSize, String reason) {
+        if (newLimit == limit && newBatchSize == batchSize) {
+            return;
+        }
+        log.info("bulk 限流调整: 并发 {} -> {}, 文档数 {} -> {}, 原因: {}", limit, newLimit, batchSize, newBatchSize, reason);
+        limit = newLimit;
+        batchSize = newBatchSize;
+        history.addLast(new ElasticSearchBulkLimiterMetricsDTO.Adjustment(System.currentTimeMillis(), newLimit, newBatchSize, reason));
+        while (history.size() > bulk.getHistorySize()) {
+            history.removeFirst();
+        }
+        // 并发数增大后唤醒等待中的提交线程
+        available.signalAll();
+    }
+
+    /**
+     * 当前单个 bulk 的文档数量
+     *
+     * @return int
+     */
+    public int getBatchSize() {
+        lock.lock();
+        try {
+            return batchSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前的限流指标与调整历史
+     *
+     * @return ElasticSearchBulkLimiterMetricsDTO
+     */
+    public ElasticSearchBulkLimiterMetricsDTO getMetrics() {
+        lock.lock();
+        try {
+            ElasticSearchBulkLimiterMetricsDTO metrics = new ElasticSearchBulkLimiterMetricsDTO();
+            metrics.setLimit(limit);
+            metrics.setBatchSize(batchSize);
+            metrics.setInFlight(inFlight);
+            metrics.setTotalRejected(totalRejected);
+            metrics.setHistory(new ArrayList<>(history));
+            return metrics;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.xh.es.service.bulk;
+
+import com.xh.es.common.util.ElasticSearchSourceUtil;
+import com.xh.es.model.dto.ElasticSearchBulkResultDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.settings.Settings;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 批量导入会话,由 {@link ElasticSearchBulkLoader#open(String, int)} 创建
+ * close 时恢复 refresh_interval/number_of_replicas,恢复成功后再 refresh 和 force merge,
+ * 请配合 try-with-resources 使用,保证导入失败时同样会恢复设置
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+public class ElasticSearchBulkLoadSession implements Closeable {
+
+    private final ElasticSearchBulkLoader loader;
+    private final String index;
+    private final String refreshInterval;
+    private final String numberOfReplicas;
+    private final int maxNumSegments;
+    private final ElasticSearchBulkResultDTO result = new ElasticSearchBulkResultDTO();
+    private boolean closed;
+
+    ElasticSearchBulkLoadSession(ElasticSearchBulkLoader loader, String index, String refreshInterval, String numberOfReplicas, int maxNumSegments) {
+        this.loader = loader;
+        this.index = index;
+        this.refreshInterval = refreshInterval;
+        this.numberOfReplicas = numberOfReplicas;
+        this.maxNumSegments = maxNumSegments;
+    }
+
+    /**
+     * 写入文档流
+     *
+     * @param stream      文档流,由调用方负责关闭
+     * @param idExtractor 从文档中获取 _id 的方法
+     * @param <E>         文档类型
+     * @return ElasticSearchBulkResultDTO 本次写入的结果
+     * @throws IOException 异常
+     */
+    public <E> ElasticSearchBulkResultDTO addDocuments(Stream<E> stream, Function<? super E, String> idExtractor) throws IOException {
+        return this.addDocuments(stream.iterator(), idExtractor);
+    }
+
+    /**
+     * 写入文档迭代器
+     *
+     * @param iterator    文档迭代器
+     * @param idExtractor 从文档中获取 _id 的方法
+     * @param <E>         文档类型
+     * @return ElasticSearchBulkResultDTO 本次写入的结果
+     * @throws IOException 异常
+     */
+    public <E> ElasticSearchBulkResultDTO addDocuments(Iterator<E> iterator, Function<? super E, String> idExtractor) throws IOException {
+        Iterator<IndexRequest> requests = new Iterator<IndexRequest>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public IndexRequest next() {
+                E document = iterator.next();
+                return ElasticSearchSourceUtil.source(new IndexRequest(index).id(idExtractor.apply(document)), document);
+            }
+        };
+        return this.add(requests);
+    }
+
+    /**
+     * 写入任意的写请求(index/update/delete),请求的索引应为当前会话的索引
+     *
+     * @param requests 写请求,按需迭代
+     * @return ElasticSearchBulkResultDTO 本次写入的结果
+     * @throws IOException 异常
+     */
+    public ElasticSearchBulkResultDTO add(Iterator<? extends DocWriteRequest<?>> requests) throws IOException {
+        if (closed) {
+            throw new RuntimeException("索引[" + index + "]的批量导入会话已经关闭!");
+        }
+        ElasticSearchBulkResultDTO current = loader.getElasticSearchBulkExecutor().execute(requests, false);
+        result.merge(current);
+        return current;
+    }
+
+    /**
+     * 会话中累计的写入结果
+     *
+     * @return ElasticSearchBulkResultDTO
+     */
+    public ElasticSearchBulkResultDTO getResult() {
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // 原设置为 null 时 putNull,即恢复为 ES 默认值
+            loader.updateSettings(index, Settings.builder()
+                    .put(ElasticSearchBulkLoader.REFRESH_INTERVAL, refreshInterval)
+                    .put(ElasticSearchBulkLoader.NUMBER_OF_REPLICAS, numberOfReplicas)
+                    .build());
+        } finally {
+            loader.finish(index);
+        }
+        log.info("索引[{}]批量导入结束,已恢复 refresh_interval:{},number_of_replicas:{},成功:{},失败:{}",
+                index, refreshInterval, numberOfReplicas, result.getSucceededCount(), result.getFailedItems().size());
+        loader.refresh(index);
+        if (maxNumSegments > 0) {
+            loader.forceMerge(index, maxNumSegments);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.xh.es.service.bulk;
+
+import com.xh.es.model.dto.ElasticSearchBulkResultDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.settings.Settings;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 大批量导入(全量重建索引)
+ * 导入期间关闭刷新(refresh_interval=-1)并去掉副本(number_of_replicas=0),
+ * 导入结束后无论成功与否都恢复原有设置,然后 refresh,按需 force merge
+ * <p>
+ * 使用方式:
+ * <pre>
+ * try (ElasticSearchBulkLoadSession session = elasticSearchBulkLoader.open("demo", 1)) {
+ *     session.addDocuments(stream, idExtractor);
+ * }
+ * </pre>
+ * 同一个索引同一时刻只允许一个导入会话,避免后开启的会话把 -1/0 当作原设置保存下来
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component
+public class ElasticSearchBulkLoader {
+
+    static final String REFRESH_INTERVAL = "index.refresh_interval";
+    static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ElasticSearchBulkExecutor elasticSearchBulkExecutor;
+
+    public ElasticSearchBulkLoader(RestHighLevelClient restHighLevelClient, ElasticSearchBulkExecutor elasticSearchBulkExecutor) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.elasticSearchBulkExecutor = elasticSearchBulkExecutor;
+    }
+
+    /**
+     * 开启导入会话,不做 force merge
+     *
+     * @param index 索引
+     * @return ElasticSearchBulkLoadSession
+     * @throws IOException 异常
+     */
+    public ElasticSearchBulkLoadSession open(String index) throws IOException {
+        return this.open(index, 0);
+    }
+
+    /**
+     * 开启导入会话: 保存 refresh_interval/number_of_replicas 后设置为 -1/0
+     *
+     * @param index          索引
+     * @param maxNumSegments 结束后 force merge 的目标段数, <=0 表示不做 force merge
+     * @return ElasticSearchBulkLoadSession 需要调用 close 恢复设置
+     * @throws IOException 异常
+     */
+    public ElasticSearchBulkLoadSession open(String index, int maxNumSegments) throws IOException {
+        if (!loading.add(index)) {
+            throw new RuntimeException("索引[" + index + "]正在进行批量导入,不能重复开启!");
+        }
+        try {
+            // 不包含默认值,未显式设置的项为 null,恢复时同样重置为默认值
+            GetSettingsRequest getSettingsRequest = new GetSettingsRequest().indices(index).names(REFRESH_INTERVAL, NUMBER_OF_REPLICAS);
+            GetSettingsResponse settings = restHighLevelClient.indices().getSettings(getSettingsRequest, RequestOptions.DEFAULT);
+            String refreshInterval = settings.getSetting(index, REFRESH_INTERVAL);
+            String numberOfReplicas = settings.getSetting(index, NUMBER_OF_REPLICAS);
+
+            this.updateSettings(index, Settings.builder().put(REFRESH_INTERVAL, "-1").put(NUMBER_OF_REPLICAS, 0).build());
+            log.info("索引[{}]开始批量导入,原 refresh_interval:{},number_of_replicas:{}", index, refreshInterval, numberOfReplicas);
+            return new ElasticSearchBulkLoadSession(this, index, refreshInterval, numberOfReplicas, maxNumSegments);
+        } catch (IOException | RuntimeException e) {
+            loading.remove(index);
+            throw e;
+        }
+    }
+
+    /**
+     * 在一个导入会话中写入文档流,结束后恢复索引设置
+     *
+     * @param index          索引
+     * @param stream         文档流,由调用方负责关闭
+     * @param idExtractor    从文档中获取 _id 的方法
+     * @param maxNumSegments 结束后 force merge 的目标段数, <=0 表示不做 force merge
+     * @param <E>            文档类型
+     * @return ElasticSearchBulkResultDTO
+     * @throws IOException 异常
+     */
+    public <E> ElasticSearchBulkResultDTO load(String index, Stream<E> stream, Function<? super E, String> idExtractor, int maxNumSegments) throws IOException {
+        try (ElasticSearchBulkLoadSession session = this.open(index, maxNumSegments)) {
+            return session.addDocuments(stream, idExtractor);
+        }
+    }
+
+    ElasticSearchBulkExecutor getElasticSearchBulkExecutor() {
+        return elasticSearchBulkExecutor;
+    }
+
+    void updateSettings(String index, Settings settings) throws IOException {
+        UpdateSettingsRequest updateSettingsRequest = new UpdateSettingsRequest(index).settings(settings);
+        restHighLevelClient.indices().putSettings(updateSettingsRequest, RequestOptions.DEFAULT);
+    }
+
+    void refresh(String index) throws IOException {
+        restHighLevelClient.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+    }
+
+    void forceMerge(String index, int maxNumSegments) throws IOException {
+        ForceMergeRequest forceMergeRequest = new ForceMergeRequest(index);
+        forceMergeRequest.maxNumSegments(maxNumSegments);
+        restHighLevelClient.indices().forcemerge(forceMergeRequest, RequestOptions.DEFAULT);
+    }
+
+    void finish(String index) {
+        loading.remove(index);
+    }
+}
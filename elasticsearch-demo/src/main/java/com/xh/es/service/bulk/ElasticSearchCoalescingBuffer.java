@@ -0,0 +1,355 @@
+package com.xh.es.service.bulk;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchSourceUtil;
+import com.xh.es.model.dto.ElasticSearchBulkResultDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 写入合并缓冲
+ * 在一个合并窗口内,同一个文档(index+id)的多次写入只保留合并后的一次:
+ * 1: 多次部分更新(update)按字段合并,同一字段后写入的覆盖先写入的,嵌套对象逐层合并(与 ES 合并部分更新 doc 的规则一致);
+ * 2: 先 index 再 update,合并为一次 index;
+ * 3: 任何写入之后再 delete,只保留 delete;
+ * 4: delete 之后的 update 在 ES 中会因为文档不存在而失败,这里直接丢弃
+ * <p>
+ * 窗口结束或缓冲中的文档数量达到上限时,通过 {@link ElasticSearchBulkExecutor} 提交,
+ * 所有提交都在同一个线程中按顺序执行,保证同一文档的写入顺序;
+ * 提交失败或暂时写入失败的文档放回缓冲,下个窗口重新提交(请求失败时其中部分可能已写入,重新提交结果相同),
+ * 缓冲与提交中的文档数量达到 maxPendingKeys 时写入阻塞等待
+ * 注意: 数组不合并,以后写入的整体为准(与 ES 一致)
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component
+public class ElasticSearchCoalescingBuffer {
+
+    private final ElasticSearchBulkExecutor elasticSearchBulkExecutor;
+    private final ElasticSearchProperties elasticSearchProperties;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    /**
+     * 是否已有排队中的提交任务
+     */
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    /**
+     * index/id -> 合并后的写入, 按第一次写入的顺序排列
+     */
+    private Map<String, PendingWrite> buffer = new LinkedHashMap<>();
+    /**
+     * 正在提交的文档数量, 由 this 锁保护
+     */
+    private int inFlight;
+
+    public ElasticSearchCoalescingBuffer(ElasticSearchBulkExecutor elasticSearchBulkExecutor, ElasticSearchProperties elasticSearchProperties) {
+        this.elasticSearchBulkExecutor = elasticSearchBulkExecutor;
+        this.elasticSearchProperties = elasticSearchProperties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("es-coalesce-", true));
+        long window = elasticSearchProperties.getCoalesce().getWindowMillis();
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 写入完整文档(覆盖)
+     *
+     * @param var2  入参类(实际文档内容)
+     * @param index 索引
+     * @param id    id标识
+     */
+    public void index(Object var2, String index, String id) {
+        Map<String, Object> fields = ElasticSearchSourceUtil.toMap(var2);
+        this.merge(index, id, OpType.INDEX, fields);
+    }
+
+    /**
+     * 部分更新文档,与缓冲中同一文档的写入按字段合并
+     *
+     * @param var2  修改的内容
+     * @param index 索引
+     * @param id    id标识
+     */
+    public void update(Object var2, String index, String id) {
+        Map<String, Object> fields = ElasticSearchSourceUtil.toMap(var2);
+        this.merge(index, id, OpType.UPDATE, fields);
+    }
+
+    /**
+     * 删除文档,缓冲中同一文档之前的写入全部丢弃
+     *
+     * @param index 索引
+     * @param id    id标识
+     */
+    public void delete(String index, String id) {
+        this.merge(index, id, OpType.DELETE, null);
+    }
+
+    private void merge(String index, String id, OpType opType, Map<String, Object> fields) {
+        received.incrementAndGet();
+        ElasticSearchProperties.Coalesce coalesce = elasticSearchProperties.getCoalesce();
+        boolean full;
+        synchronized (this) {
+            this.awaitCapacity(index + "/" + id, coalesce);
+            combine(buffer, new PendingWrite(index, id, opType, null == fields ? null : new LinkedHashMap<>(fields)));
+            full = buffer.size() >= coalesce.getMaxKeys();
+        }
+        if (full) {
+            this.scheduleFlush();
+        }
+    }
+
+    /**
+     * 缓冲中与提交中的文档数量达到 maxPendingKeys 时阻塞等待提交完成,超过 maxBlockMillis 仍没有空间时拒绝写入
+     * 合并到缓冲中已有文档的写入不增加数量,不阻塞; 调用时持有 this 锁
+     */
+    private void awaitCapacity(String key, ElasticSearchProperties.Coalesce coalesce) {
+        long deadline = System.currentTimeMillis() + coalesce.getMaxBlockMillis();
+        while (!buffer.containsKey(key) && buffer.size() + inFlight >= coalesce.getMaxPendingKeys()) {
+            this.scheduleFlush();
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new RuntimeException("合并缓冲已满(待提交文档数:" + (buffer.size() + inFlight) + "),ES 写入跟不上,本次写入被拒绝!");
+            }
+            try {
+                this.wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待合并缓冲空间时被中断!", e);
+            }
+        }
+    }
+
+    /**
+     * 将 write 合并到 target 中同一文档的写入之后
+     */
+    private static void combine(Map<String, PendingWrite> target, PendingWrite write) {
+        String key = write.index + "/" + write.id;
+        PendingWrite pending = target.get(key);
+        if (null == pending || write.opType != OpType.UPDATE) {
+            target.put(key, write);
+        } else if (pending.opType == OpType.DELETE) {
+            log.debug("文档已在缓冲中被删除,丢弃之后的部分更新,index:{},id:{}", write.index, write.id);
+        } else {
+            // INDEX + UPDATE -> INDEX, UPDATE + UPDATE -> UPDATE, 字段后写入覆盖先写入
+            deepMerge(pending.fields, write.fields);
+        }
+    }
+
+    /**
+     * 提交任务只排队一个, 提交过程中再次写满时最多再排队一个
+     */
+    private void scheduleFlush() {
+        if (flushPending.compareAndSet(false, true)) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * 将 source 合并到 target: 两边都是对象的字段递归合并,其余(包括数组、null)以 source 为准
+     * 嵌套对象复制后再修改,不影响调用方传入的对象
+     */
+    @SuppressWarnings("unchecked")
+    private static void deepMerge(Map<String, Object> target, Map<String, Object> source) {
+        source.forEach((k, v) -> {
+            Object current = target.get(k);
+            if (current instanceof Map && v instanceof Map) {
+                Map<String, Object> merged = new LinkedHashMap<>((Map<String, Object>) current);
+                deepMerge(merged, (Map<String, Object>) v);
+                target.put(k, merged);
+            } else {
+                target.put(k, v);
+            }
+        });
+    }
+
+    /**
+     * 立即提交缓冲中的写入,并等待提交完成
+     *
+     * @return ElasticSearchBulkResultDTO 本次提交的结果
+     * @throws IOException 异常
+     */
+    public ElasticSearchBulkResultDTO flush() throws IOException {
+        try {
+            return scheduler.submit(this::doFlush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待合并缓冲提交时被中断");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private void flushQuietly() {
+        flushPending.set(false);
+        try {
+            this.doFlush();
+        } catch (Exception e) {
+            log.error("合并缓冲提交失败,写入已放回缓冲,{}ms 后重新提交", elasticSearchProperties.getCoalesce().getWindowMillis(), e);
+        }
+    }
+
+    /**
+     * 只在 scheduler 线程中执行,保证多次提交之间的顺序
+     * 请求失败时全部写入放回缓冲; 文档暂时写入失败(429、5xx)时放回缓冲,永久性失败计入 failed
+     */
+    private ElasticSearchBulkResultDTO doFlush() throws IOException {
+        Map<String, PendingWrite> writes;
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                return new ElasticSearchBulkResultDTO();
+            }
+            writes = buffer;
+            buffer = new LinkedHashMap<>();
+            inFlight = writes.size();
+        }
+        // 结果中的失败只有 _id(索引为实际索引),同一个 _id 可能写入多个索引,按请求对象对应回 索引+id
+        List<DocWriteRequest<?>> requests = new ArrayList<>(writes.size());
+        Map<DocWriteRequest<?>, String> keys = new IdentityHashMap<>(writes.size());
+        writes.forEach((key, write) -> {
+            DocWriteRequest<?> request = write.toRequest();
+            requests.add(request);
+            keys.put(request, key);
+        });
+        Map<String, BulkItemResponse.Failure> failures = new ConcurrentHashMap<>();
+        ElasticSearchBulkResultDTO result;
+        try {
+            result = elasticSearchBulkExecutor.execute(requests.iterator(), false, null, (request, failure) -> failures.put(keys.get(request), failure));
+        } catch (IOException | RuntimeException e) {
+            this.requeue(writes.values());
+            throw e;
+        }
+        List<PendingWrite> retry = new ArrayList<>();
+        List<String> failedKeys = new ArrayList<>();
+        writes.forEach((key, write) -> {
+            BulkItemResponse.Failure failure = failures.get(key);
+            if (null == failure) {
+                return;
+            }
+            if (ElasticSearchBulkExecutor.isTransient(failure)) {
+                retry.add(write);
+            } else {
+                failedKeys.add(key);
+            }
+        });
+        this.requeue(retry);
+        flushed.addAndGet(writes.size() - retry.size() - failedKeys.size());
+        failed.addAndGet(failedKeys.size());
+        if (!retry.isEmpty()) {
+            log.warn("合并缓冲提交中有{}个文档暂时写入失败,已放回缓冲", retry.size());
+        }
+        if (!failedKeys.isEmpty()) {
+            log.error("合并缓冲提交中有{}个文档写入失败且不可重试:{}", failedKeys.size(), failedKeys);
+        }
+        log.debug("合并缓冲提交完成,累计接收写入:{},累计提交写入:{}", received.get(), flushed.get());
+        return result;
+    }
+
+    /**
+     * 提交结束, 失败的写入按原来的顺序放在之后收到的写入之前重新合并,并唤醒等待空间的写入
+     */
+    private synchronized void requeue(Collection<PendingWrite> writes) {
+        inFlight = 0;
+        if (!writes.isEmpty()) {
+            Map<String, PendingWrite> merged = new LinkedHashMap<>();
+            writes.forEach(write -> combine(merged, write));
+            buffer.values().forEach(write -> combine(merged, write));
+            buffer = merged;
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * 累计接收的写入次数
+     *
+     * @return long
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * 累计合并后实际写入成功的次数
+     *
+     * @return long
+     */
+    public long getFlushed() {
+        return flushed.get();
+    }
+
+    /**
+     * 累计写入失败且不可重试(如 mapping 错误)被丢弃的写入次数
+     *
+     * @return long
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private enum OpType {
+        INDEX, UPDATE, DELETE
+    }
+
+    private static class PendingWrite {
+
+        private final String index;
+        private final String id;
+        private final OpType opType;
+        private final Map<String, Object> fields;
+
+        PendingWrite(String index, String id, OpType opType, Map<String, Object> fields) {
+            this.index = index;
+            this.id = id;
+            this.opType = opType;
+            this.fields = fields;
+        }
+
+        DocWriteRequest<?> toRequest() {
+            switch (opType) {
+                case INDEX:
+                    return ElasticSearchSourceUtil.source(new IndexRequest(index).id(id), fields);
+                case UPDATE:
+                    return ElasticSearchSourceUtil.doc(new UpdateRequest(index, id), fields);
+                default:
+                    return new DeleteRequest(index, id);
+            }
+        }
+    }
+}
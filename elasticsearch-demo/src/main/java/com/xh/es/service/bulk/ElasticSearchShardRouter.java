@@ -0,0 +1,119 @@
+package com.xh.es.service.bulk;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.cluster.metadata.MetaDataCreateIndexService;
+import org.elasticsearch.cluster.routing.Murmur3HashFunction;
+import org.elasticsearch.common.settings.Settings;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 ES 的路由规则计算文档所在的分片
+ * shard = floorMod(murmur3(_routing 或 _id), routing_num_shards) / (routing_num_shards / number_of_shards)
+ * <p>
+ * 用于把 bulk 按分片拆分,使每个 bulk 只涉及少量分片,降低协调节点的分发开销
+ * 计算结果只影响 bulk 的拆分方式,不影响写入的正确性,因此无法获取索引信息时直接返回 null 不做拆分
+ * 不支持设置了 routing_partition_size 的索引
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component
+public class ElasticSearchShardRouter {
+
+    private static final String NUMBER_OF_SHARDS = "index.number_of_shards";
+    private static final String NUMBER_OF_ROUTING_SHARDS = "index.number_of_routing_shards";
+    private static final String ROUTING_PARTITION_SIZE = "index.routing_partition_size";
+    private static final String VERSION_CREATED = "index.version.created";
+
+    private final Map<String, Routing> routings = new ConcurrentHashMap<>();
+
+    private final RestHighLevelClient restHighLevelClient;
+
+    public ElasticSearchShardRouter(RestHighLevelClient restHighLevelClient) {
+        this.restHighLevelClient = restHighLevelClient;
+    }
+
+    /**
+     * 获取索引的路由信息,成功获取后缓存
+     *
+     * @param index 索引或只指向一个索引的别名
+     * @return Routing null 表示索引不存在或不支持按分片计算
+     */
+    public Routing getRouting(String index) {
+        Routing routing = routings.get(index);
+        if (null != routing) {
+            return routing;
+        }
+        try {
+            GetSettingsRequest getSettingsRequest = new GetSettingsRequest().indices(index)
+                    .names(NUMBER_OF_SHARDS, NUMBER_OF_ROUTING_SHARDS, ROUTING_PARTITION_SIZE, VERSION_CREATED);
+            GetSettingsResponse response = restHighLevelClient.indices().getSettings(getSettingsRequest, RequestOptions.DEFAULT);
+            if (response.getIndexToSettings().size() != 1) {
+                return null;
+            }
+            Settings settings = response.getIndexToSettings().valuesIt().next();
+            if (settings.getAsInt(ROUTING_PARTITION_SIZE, 1) != 1) {
+                return null;
+            }
+            int numberOfShards = settings.getAsInt(NUMBER_OF_SHARDS, 1);
+            Integer routingNumShards = settings.getAsInt(NUMBER_OF_ROUTING_SHARDS, null);
+            if (null == routingNumShards) {
+                routingNumShards = MetaDataCreateIndexService.calculateNumRoutingShards(numberOfShards,
+                        Version.fromId(settings.getAsInt(VERSION_CREATED, Version.CURRENT.id)));
+            }
+            routing = new Routing(numberOfShards, routingNumShards);
+            routings.put(index, routing);
+            return routing;
+        } catch (Exception e) {
+            log.debug("获取索引[{}]的分片信息失败,不按分片拆分 bulk", index, e);
+            return null;
+        }
+    }
+
+    /**
+     * 清除索引的路由信息缓存,索引重建、split/shrink 之后需要调用
+     *
+     * @param index 索引
+     */
+    public void evict(String index) {
+        routings.remove(index);
+    }
+
+    public static class Routing {
+
+        private final int numberOfShards;
+        private final int routingNumShards;
+        private final int routingFactor;
+
+        Routing(int numberOfShards, int routingNumShards) {
+            this.numberOfShards = numberOfShards;
+            this.routingNumShards = routingNumShards;
+            this.routingFactor = routingNumShards / numberOfShards;
+        }
+
+        /**
+         * 计算文档所在的分片
+         *
+         * @param id      _id
+         * @param routing _routing, 为 null 时按 _id 路由
+         * @return 分片号
+         */
+        public int shard(String id, String routing) {
+            int hash = Murmur3HashFunction.hash(null == routing ? id : routing);
+            return Math.floorMod(hash, routingNumShards) / routingFactor;
+        }
+
+        public int getNumberOfShards() {
+            return numberOfShards;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.xh.es.service.bulk;
+
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchSourceUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 本地预写日志(spool)
+ * 写入先追加到内存映射(mmap)的分段文件中立即返回,不受集群状态影响;
+ * 后台线程按追加顺序读取并以 bulk 回放到 ES,每次回放成功后保存检查点(checkpoint)
+ * <p>
+ * 1: 记录格式: 长度(int) + crc32(int) + 操作类型(byte) + 索引 + id + _source,长度最后写入,读到长度即表示记录完整;
+ * 2: 分段写满后滚动到下一个分段,检查点越过的分段直接删除;
+ * 3: 重启后从检查点继续回放,最后一个分段中校验失败(未写完)的记录被丢弃;
+ * 4: 集群不可用(IOException)或文档暂时写入失败(429、5xx)时检查点不越过失败的记录,按回放间隔从该记录开始整体重放;
+ * 回放不对单个文档重试,单独重试会让被拒绝的写入排到同一文档后面的写入之后;
+ * 永久性失败(如 mapping 错误)写入死信文件 dead-letter.log 后跳过
+ * <p>
+ * 注意: 文件内容在每次回放前 force 到磁盘,进程崩溃时最多丢失一个回放间隔内操作系统尚未落盘的写入;
+ * 回放是 at-least-once,检查点保存前崩溃会重复回放最后一批
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "elasticsearch.spool", name = "enabled", havingValue = "true")
+public class ElasticSearchSpool {
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String DEAD_LETTER = "dead-letter.log";
+    /**
+     * 记录头: 长度(int) + crc32(int)
+     */
+    private static final int HEADER = 8;
+    private static final byte OP_INDEX = 0;
+    private static final byte OP_UPDATE = 1;
+    private static final byte OP_DELETE = 2;
+
+    private final ElasticSearchBulkExecutor elasticSearchBulkExecutor;
+    private final ElasticSearchProperties.Spool spool;
+    private final Path dir;
+    private final int segmentSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    private volatile double drainRate;
+
+    /**
+     * 写入端状态,由 this 锁保护
+     */
+    private int writeSegment;
+    private MappedByteBuffer writeBuffer;
+    /**
+     * 已写完的位置: 高32位为分段号,低32位为分段内位置,回放线程只读取该位置之前的记录
+     */
+    private volatile long published;
+
+    /**
+     * 回放端状态,只在 scheduler 线程中访问
+     */
+    private int readSegment;
+    private int readPosition;
+    private MappedByteBuffer readBuffer;
+
+    public ElasticSearchSpool(ElasticSearchBulkExecutor elasticSearchBulkExecutor, ElasticSearchProperties elasticSearchProperties) throws IOException {
+        this.elasticSearchBulkExecutor = elasticSearchBulkExecutor;
+        this.spool = elasticSearchProperties.getSpool();
+        this.dir = Paths.get(spool.getDir());
+        this.segmentSize = spool.getSegmentSizeMb() * 1024 * 1024;
+        Files.createDirectories(dir);
+        this.recover();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("es-spool-", true));
+        this.scheduler.scheduleWithFixedDelay(this::drain, 0, spool.getDrainIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 追加写入完整文档(覆盖)
+     *
+     * @param var2  入参类(实际文档内容)
+     * @param index 索引
+     * @param id    id标识
+     */
+    public void index(Object var2, String index, String id) {
+        this.append(OP_INDEX, index, id, ElasticSearchSourceUtil.toBytes(var2).toBytesRef());
+    }
+
+    /**
+     * 追加部分更新文档
+     *
+     * @param var2  修改的内容
+     * @param index 索引
+     * @param id    id标识
+     */
+    public void update(Object var2, String index, String id) {
+        this.append(OP_UPDATE, index, id, ElasticSearchSourceUtil.toBytes(var2).toBytesRef());
+    }
+
+    /**
+     * 追加删除文档
+     *
+     * @param index 索引
+     * @param id    id标识
+     */
+    public void delete(String index, String id) {
+        this.append(OP_DELETE, index, id, new BytesRef());
+    }
+
+    private synchronized void append(byte opType, String index, String id, BytesRef source) {
+        byte[] indexBytes = index.getBytes(StandardCharsets.UTF_8);
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 2 + indexBytes.length + 2 + idBytes.length + source.length;
+        if (HEADER + length > segmentSize) {
+            throw new RuntimeException("写入 spool 的文档大小超过了分段大小!");
+        }
+        if (writeBuffer.remaining() < HEADER + length) {
+            this.roll();
+        }
+        int start = writeBuffer.position();
+        writeBuffer.position(start + HEADER);
+        writeBuffer.put(opType)
+                .putShort((short) indexBytes.length).put(indexBytes)
+                .putShort((short) idBytes.length).put(idBytes)
+                .put(source.bytes, source.offset, source.length);
+        writeBuffer.putInt(start + 4, crc(writeBuffer, start + HEADER, length));
+        writeBuffer.putInt(start, length);
+        published = position(writeSegment, writeBuffer.position());
+        appended.incrementAndGet();
+    }
+
+    /**
+     * 当前分段写满,滚动到下一个分段
+     */
+    private void roll() {
+        try {
+            writeBuffer.force();
+            writeBuffer = this.map(writeSegment + 1);
+            writeSegment++;
+            published = position(writeSegment, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("spool 创建分段失败", e);
+        }
+    }
+
+    /**
+     * 启动时根据检查点和已有分段恢复写入位置与回放位置
+     */
+    private void recover() throws IOException {
+        List<Integer> segments = this.segments();
+        int checkpointSegment = 0;
+        int checkpointPosition = 0;
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            checkpointSegment = buffer.getInt();
+            checkpointPosition = buffer.getInt();
+        }
+        // 检查点所在分段已被删除时,从之后最早的分段开始
+        readSegment = checkpointSegment;
+        readPosition = checkpointPosition;
+        for (Integer segment : segments) {
+            if (segment > checkpointSegment && !segments.contains(checkpointSegment)) {
+                readSegment = segment;
+                readPosition = 0;
+                break;
+            }
+        }
+        writeSegment = segments.isEmpty() ? readSegment : Math.max(readSegment, segments.get(segments.size() - 1));
+        writeBuffer = this.map(writeSegment);
+        int position = writeSegment == readSegment ? readPosition : 0;
+        int length;
+        while ((length = this.validLength(writeBuffer, position, segmentSize)) > 0) {
+            position += HEADER + length;
+        }
+        writeBuffer.position(position);
+        published = position(writeSegment, position);
+        readBuffer = this.map(readSegment);
+        log.info("spool 恢复完成,回放位置:{}/{},写入位置:{}/{}", readSegment, readPosition, writeSegment, position);
+    }
+
+    private void drain() {
+        try {
+            MappedByteBuffer current;
+            synchronized (this) {
+                current = writeBuffer;
+            }
+            current.force();
+            while (this.drainOnce() > 0) {
+                // 有积压时连续回放,直到追上写入位置
+            }
+        } catch (Exception e) {
+            log.error("spool 回放失败,{}ms 后重试", spool.getDrainIntervalMillis(), e);
+        }
+    }
+
+    /**
+     * 从回放位置读取一批记录,以一个 bulk 按顺序提交,然后推进检查点:
+     * 有暂时性失败(429、5xx)时检查点只推进到第一条暂时性失败的记录之前,下个回放间隔从该记录重新回放;
+     * 永久性失败(mapping、解析错误等 4xx)写入死信文件后跳过
+     *
+     * @return 本次推进的记录数量, 有暂时性失败时返回 0,等待下个回放间隔
+     */
+    private int drainOnce() throws IOException {
+        long snapshot = published;
+        int publishedSegment = (int) (snapshot >>> 32);
+        int publishedPosition = (int) snapshot;
+        int fromSegment = readSegment;
+        int segment = readSegment;
+        int position = readPosition;
+        MappedByteBuffer buffer = readBuffer;
+        BulkRequest bulkRequest = new BulkRequest();
+        // 每条记录的起始位置,用于把检查点停在失败的记录上
+        List<Long> positions = new ArrayList<>();
+        while (bulkRequest.numberOfActions() < spool.getDrainActions()) {
+            int limit = segment == publishedSegment ? publishedPosition : segmentSize;
+            int length = this.validLength(buffer, position, limit);
+            if (length > 0) {
+                positions.add(position(segment, position));
+                bulkRequest.add(this.toRequest(buffer, position, length));
+                position += HEADER + length;
+            } else if (segment < publishedSegment) {
+                segment++;
+                position = 0;
+                buffer = this.map(segment);
+            } else {
+                break;
+            }
+        }
+        int count = bulkRequest.numberOfActions();
+        int advanced = count;
+        if (count > 0) {
+            long start = System.nanoTime();
+            // 同一个 bulk 中同一文档的写入在同一个分片上按顺序执行; 不对单个文档重试,重试会打乱同一文档的写入顺序,
+            // 暂时性失败时检查点停在该记录之前,下次从该记录开始整体重放
+            BulkResponse bulkResponse = elasticSearchBulkExecutor.executeOrdered(bulkRequest);
+            List<DocWriteRequest<?>> requests = bulkRequest.requests();
+            List<String> deadLetters = new ArrayList<>();
+            int succeeded = 0;
+            // 同一个 _id 的多条记录(先 index 后 update)在一批中很常见,按位置(itemId)对应,不按 _id
+            for (BulkItemResponse item : bulkResponse.getItems()) {
+                if (!item.isFailed()) {
+                    succeeded++;
+                } else if (ElasticSearchBulkExecutor.isTransient(item.getFailure())) {
+                    advanced = item.getItemId();
+                    break;
+                } else {
+                    deadLetters.add(this.deadLetter(requests.get(item.getItemId()), item.getFailure()));
+                }
+            }
+            if (!deadLetters.isEmpty()) {
+                Files.write(dir.resolve(DEAD_LETTER), deadLetters, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                log.error("spool 回放中有{}个文档写入失败且不可重试,已写入死信文件:{}", deadLetters.size(), dir.resolve(DEAD_LETTER));
+            }
+            if (advanced < count) {
+                log.warn("spool 回放中有文档暂时写入失败,{}ms 后从第{}条记录重新回放", spool.getDrainIntervalMillis(), advanced + 1);
+                long cutoff = positions.get(advanced);
+                position = (int) cutoff;
+                if (segment != (int) (cutoff >>> 32)) {
+                    segment = (int) (cutoff >>> 32);
+                    buffer = segment == readSegment ? readBuffer : this.map(segment);
+                }
+            }
+            drained.addAndGet(succeeded);
+            drainRate = succeeded * 1e9 / Math.max(1, System.nanoTime() - start);
+        }
+        if (segment != readSegment || position != readPosition) {
+            this.checkpoint(segment, position);
+            readSegment = segment;
+            readPosition = position;
+            readBuffer = buffer;
+            // 检查点之前的分段已全部回放完成
+            for (int s = fromSegment; s < segment; s++) {
+                Files.deleteIfExists(this.segmentPath(s));
+            }
+        }
+        return advanced < count ? 0 : count;
+    }
+
+    /**
+     * 死信记录: 一行一个 JSON,包含写入内容和失败原因,可以修正后重新写入
+     */
+    private String deadLetter(DocWriteRequest<?> request, BulkItemResponse.Failure failure) {
+        JSONObject line = JSONUtil.createObj()
+                .set("opType", request.opType().getLowercase())
+                .set("index", request.index())
+                .set("id", request.id())
+                .set("status", failure.getStatus().getStatus())
+                .set("reason", failure.getMessage());
+        if (request instanceof IndexRequest) {
+            line.set("source", ((IndexRequest) request).source().utf8ToString());
+        } else if (request instanceof UpdateRequest) {
+            line.set("source", ((UpdateRequest) request).doc().source().utf8ToString());
+        }
+        return line.toString();
+    }
+
+    /**
+     * 读取 position 处记录的长度,记录不完整或校验失败时返回 0
+     */
+    private int validLength(ByteBuffer buffer, int position, int limit) {
+        if (position + HEADER > limit) {
+            return 0;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + HEADER + length > limit) {
+            return 0;
+        }
+        return crc(buffer, position + HEADER, length) == buffer.getInt(position + 4) ? length : 0;
+    }
+
+    private DocWriteRequest<?> toRequest(ByteBuffer buffer, int position, int length) {
+        ByteBuffer record = buffer.duplicate();
+        record.limit(position + HEADER + length).position(position + HEADER);
+        byte opType = record.get();
+        String index = this.readString(record);
+        String id = this.readString(record);
+        byte[] source = new byte[record.remaining()];
+        record.get(source);
+        switch (opType) {
+            case OP_INDEX:
+                return new IndexRequest(index).id(id).source(source, XContentType.JSON);
+            case OP_UPDATE:
+                return new UpdateRequest(index, id).doc(source, XContentType.JSON);
+            default:
+                return new DeleteRequest(index, id);
+        }
+    }
+
+    private String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort() & 0xFFFF];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void checkpoint(int segment, int position) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8).putInt(segment).putInt(position);
+            buffer.flip();
+            channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return dir.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private List<Integer> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.valueOf(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        CRC32 crc32 = new CRC32();
+        crc32.update(slice);
+        return (int) crc32.getValue();
+    }
+
+    private static long position(int segment, int position) {
+        return ((long) segment << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 累计追加的写入次数
+     *
+     * @return long
+     */
+    public long getAppended() {
+        return appended.get();
+    }
+
+    /**
+     * 累计回放到 ES 且写入成功的次数
+     *
+     * @return long
+     */
+    public long getDrained() {
+        return drained.get();
+    }
+
+    /**
+     * 最近一次回放的吞吐量
+     *
+     * @return 文档数/秒
+     */
+    public double getDrainRate() {
+        return drainRate;
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(spool.getDrainIntervalMillis(), TimeUnit.MILLISECONDS);
+        synchronized (this) {
+            writeBuffer.force();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.xh.es.service.cache;
+
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.model.dto.ElasticSearchCacheStatsDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 index+id 缓存文档 _source 的读穿透缓存
+ * 缓存的是 _source 字符串而不是对象,不同的返回类型共用一份缓存,调用方拿到的对象相互独立
+ * <p>
+ * 1: 容量按 _source 的预估字节数计算,超出 maxWeightMb 时淘汰最久未访问的文档;
+ * 2: 写入后超过 expireAfterWriteSeconds 的文档视为过期,同时也是其它客户端修改文档后缓存不一致的最长时间;
+ * 3: 本服务的写入(单个、bulk、by-query)完成后移除对应文档,by-query 无法知道修改了哪些文档,移除整个索引的缓存;
+ * 4: 读取前通过 {@link #begin(String)} 获取索引的写入序号,读取期间索引有写入时不放入缓存,避免旧文档覆盖刚被移除的缓存;
+ * 5: 所有写入路径都经过这里,写入时同时使 {@link ElasticSearchQueryCache} 中该索引的查询结果失效
+ * <p>
+ * 缓存键不包含 _routing, 指定了 routing 的读取不经过缓存
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component
+public class ElasticSearchDocumentCache {
+
+    /**
+     * 每个文档除 _source 以外的固定开销(键、链表节点等)的预估字节数
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final ElasticSearchProperties.Cache cache;
+    private final ElasticSearchQueryCache elasticSearchQueryCache;
+    /**
+     * 按访问顺序排列,最久未访问的在最前面
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    /**
+     * 索引 -> 写入序号, 每次移除缓存时递增
+     */
+    private final Map<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expiredCount;
+    private long invalidationCount;
+
+    public ElasticSearchDocumentCache(ElasticSearchProperties elasticSearchProperties, ElasticSearchQueryCache elasticSearchQueryCache) {
+        this.cache = elasticSearchProperties.getCache();
+        this.elasticSearchQueryCache = elasticSearchQueryCache;
+    }
+
+    public boolean isEnabled() {
+        return cache.isEnabled();
+    }
+
+    /**
+     * 读取 ES 之前获取索引当前的写入序号, 放入缓存时传回
+     *
+     * @param index 索引
+     * @return 写入序号
+     */
+    public long begin(String index) {
+        return this.sequence(index).get();
+    }
+
+    /**
+     * 获取缓存的 _source
+     *
+     * @param index 索引
+     * @param id    id
+     * @return _source, null 表示未缓存或已过期
+     */
+    public String get(String index, String id) {
+        if (!cache.isEnabled()) {
+            return null;
+        }
+        Key key = new Key(index, id);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (null == entry) {
+                missCount++;
+                return null;
+            }
+            if (System.currentTimeMillis() - entry.created > cache.getExpireAfterWriteSeconds() * 1000) {
+                this.remove(key);
+                expiredCount++;
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            return entry.source;
+        }
+    }
+
+    /**
+     * 放入缓存, 读取期间索引有过写入(序号变化)时放弃
+     *
+     * @param index    索引
+     * @param id       id
+     * @param source   _source
+     * @param sequence 读取前 {@link #begin(String)} 返回的写入序号
+     */
+    public void put(String index, String id, String source, long sequence) {
+        if (!cache.isEnabled() || null == source) {
+            return;
+        }
+        long maxWeight = cache.getMaxWeightMb() * 1024 * 1024;
+        long entryWeight = ENTRY_OVERHEAD + 2L * (index.length() + id.length() + source.length());
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        Key key = new Key(index, id);
+        synchronized (this) {
+            if (this.sequence(index).get() != sequence) {
+                return;
+            }
+            this.remove(key);
+            entries.put(key, new Entry(source, entryWeight, System.currentTimeMillis()));
+            weight += entryWeight;
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                weight -= iterator.next().getValue().weight;
+                iterator.remove();
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * 文档写入后移除缓存
+     *
+     * @param index 索引
+     * @param id    id
+     */
+    public void invalidate(String index, String id) {
+        elasticSearchQueryCache.invalidate(index);
+        if (!cache.isEnabled() || null == id) {
+            return;
+        }
+        synchronized (this) {
+            this.sequence(index).incrementAndGet();
+            if (this.remove(new Key(index, id))) {
+                invalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * 文档写入后移除缓存
+     *
+     * @param request 写入请求, 未指定 _id(自动生成)时忽略
+     */
+    public void invalidate(DocWriteRequest<?> request) {
+        this.invalidate(request.index(), request.id());
+    }
+
+    /**
+     * 移除整个索引的缓存, 用于无法确定修改了哪些文档的 update_by_query/delete_by_query
+     *
+     * @param index 索引
+     */
+    public void invalidateAll(String index) {
+        elasticSearchQueryCache.invalidate(index);
+        if (!cache.isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            this.sequence(index).incrementAndGet();
+            int before = entries.size();
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Entry> next = iterator.next();
+                if (next.getKey().index.equals(index)) {
+                    weight -= next.getValue().weight;
+                    iterator.remove();
+                }
+            }
+            invalidationCount += before - entries.size();
+        }
+        log.debug("索引[{}]的文档缓存已清除", index);
+    }
+
+    /**
+     * 缓存统计
+     *
+     * @return ElasticSearchCacheStatsDTO
+     */
+    public synchronized ElasticSearchCacheStatsDTO getStats() {
+        ElasticSearchCacheStatsDTO stats = new ElasticSearchCacheStatsDTO();
+        stats.setHitCount(hitCount);
+        stats.setMissCount(missCount);
+        stats.setEvictionCount(evictionCount);
+        stats.setExpiredCount(expiredCount);
+        stats.setInvalidationCount(invalidationCount);
+        stats.setSize(entries.size());
+        stats.setWeightBytes(weight);
+        return stats;
+    }
+
+    private AtomicLong sequence(String index) {
+        return sequences.computeIfAbsent(index, k -> new AtomicLong());
+    }
+
+    private boolean remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (null == entry) {
+            return false;
+        }
+        weight -= entry.weight;
+        return true;
+    }
+
+    private static class Entry {
+
+        private final String source;
+        private final long weight;
+        private final long created;
+
+        Entry(String source, long weight, long created) {
+            this.source = source;
+            this.weight = weight;
+            this.created = created;
+        }
+    }
+
+    private static class Key {
+
+        private final String index;
+        private final String id;
+
+        Key(String index, String id) {
+            this.index = index;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return index.equals(key.index) && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, id);
+        }
+    }
+}
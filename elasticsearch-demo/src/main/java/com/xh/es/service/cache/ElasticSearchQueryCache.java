@@ -0,0 +1,261 @@
+package com.xh.es.service.cache;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.json.JSONUtil;
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchSourceUtil;
+import com.xh.es.model.dto.ElasticSearchCacheStatsDTO;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 条件查询结果缓存
+ * 缓存键为 索引 + 分页参数 + 查询 DSL 规范化后的 md5, DSL 规范化时对象按字段名排序,
+ * bool 的 must/filter/should/must_not 子句按内容排序,子句顺序不同的相同条件共用一份缓存
+ * <p>
+ * 1: 缓存的是每个 hit 的 _id 和 _source(或 count 值),不是对象,命中时才逐个转换为调用方需要的类型,未命中时只转换一次;
+ * 2: 每个索引有一个代数(generation),本服务对索引的任何写入都会使代数加一,旧代数的缓存不再命中,在读取或淘汰时移除;
+ * 3: 容量按 JSON 的预估字节数计算,超出 maxWeightMb 时淘汰最久未访问的结果,过期时间可以按索引单独配置
+ * <p>
+ * 只缓存单次请求即可得到结果的单个索引的 from-size 查询和 count, scroll 的结果集可能很大,不缓存;
+ * 失效按写入请求中的索引名进行,通过别名查询、写入真实索引(或反过来)时需要关闭缓存或缩短该索引的过期时间
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Component
+public class ElasticSearchQueryCache {
+
+    private static final int ENTRY_OVERHEAD = 128;
+    /**
+     * 子句顺序不影响结果的数组
+     */
+    private static final Set<String> UNORDERED = new HashSet<>(Arrays.asList("must", "filter", "should", "must_not"));
+
+    private final ElasticSearchProperties.QueryCache cache;
+    /**
+     * 缓存键 -> 结果, 按访问顺序排列,最久未访问的在最前面
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    /**
+     * 索引 -> 代数
+     */
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expiredCount;
+    private long invalidationCount;
+
+    public ElasticSearchQueryCache(ElasticSearchProperties elasticSearchProperties) {
+        this.cache = elasticSearchProperties.getQueryCache();
+    }
+
+    public boolean isEnabled() {
+        return cache.isEnabled();
+    }
+
+    /**
+     * 生成缓存键
+     *
+     * @param index  索引
+     * @param query  查询 DSL, SearchSourceBuilder 或 QueryBuilder
+     * @param params 影响结果的其它参数(查询类型、分页等)
+     * @return 缓存键
+     */
+    public String key(String index, ToXContent query, Object... params) {
+        StringBuilder builder = new StringBuilder(index);
+        for (Object param : params) {
+            builder.append('|').append(param);
+        }
+        builder.append('|');
+        try {
+            canonical(ElasticSearchSourceUtil.MAPPER.readValue(Strings.toString(query), Object.class), null, builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException("ES查询条件规范化失败", e);
+        }
+        return SecureUtil.md5(builder.toString());
+    }
+
+    /**
+     * 查询前获取索引当前的代数, 放入缓存时传回
+     *
+     * @param index 索引
+     * @return 代数
+     */
+    public long generation(String index) {
+        return generations.computeIfAbsent(index, k -> new AtomicLong()).get();
+    }
+
+    /**
+     * 获取缓存的结果
+     *
+     * @param index 索引
+     * @param key   {@link #key(String, ToXContent, Object...)} 生成的缓存键
+     * @return 结果, null 表示未缓存、已过期或索引已被修改
+     */
+    public String get(String index, String key) {
+        if (!cache.isEnabled()) {
+            return null;
+        }
+        long generation = this.generation(index);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (null == entry) {
+                missCount++;
+                return null;
+            }
+            if (entry.generation != generation) {
+                this.remove(key);
+                invalidationCount++;
+                missCount++;
+                return null;
+            }
+            if (System.currentTimeMillis() - entry.created > this.ttlSeconds(index) * 1000) {
+                this.remove(key);
+                expiredCount++;
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            return entry.value;
+        }
+    }
+
+    /**
+     * 放入缓存, 查询期间索引被修改(代数变化)时放弃
+     *
+     * @param index      索引
+     * @param key        缓存键
+     * @param value      结果
+     * @param generation 查询前 {@link #generation(String)} 返回的代数
+     */
+    public void put(String index, String key, String value, long generation) {
+        if (!cache.isEnabled() || null == value || this.ttlSeconds(index) <= 0) {
+            return;
+        }
+        long maxWeight = cache.getMaxWeightMb() * 1024 * 1024;
+        long entryWeight = ENTRY_OVERHEAD + 2L * (key.length() + value.length());
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        synchronized (this) {
+            if (this.generation(index) != generation) {
+                return;
+            }
+            this.remove(key);
+            entries.put(key, new Entry(value, entryWeight, generation, System.currentTimeMillis()));
+            weight += entryWeight;
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                weight -= iterator.next().getValue().weight;
+                iterator.remove();
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * 索引被修改, 该索引已缓存的结果全部失效
+     *
+     * @param index 索引
+     */
+    public void invalidate(String index) {
+        if (cache.isEnabled()) {
+            generations.computeIfAbsent(index, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    /**
+     * 缓存统计, invalidationCount 为因索引被修改而在读取时移除的结果数量
+     *
+     * @return ElasticSearchCacheStatsDTO
+     */
+    public synchronized ElasticSearchCacheStatsDTO getStats() {
+        ElasticSearchCacheStatsDTO stats = new ElasticSearchCacheStatsDTO();
+        stats.setHitCount(hitCount);
+        stats.setMissCount(missCount);
+        stats.setEvictionCount(evictionCount);
+        stats.setExpiredCount(expiredCount);
+        stats.setInvalidationCount(invalidationCount);
+        stats.setSize(entries.size());
+        stats.setWeightBytes(weight);
+        return stats;
+    }
+
+    private long ttlSeconds(String index) {
+        return cache.getIndexTtlSeconds().getOrDefault(index, cache.getTtlSeconds());
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (null != entry) {
+            weight -= entry.weight;
+        }
+    }
+
+    /**
+     * 按字段名排序输出对象,不区分顺序的子句数组按内容排序
+     */
+    @SuppressWarnings("unchecked")
+    private static void canonical(Object value, String name, StringBuilder builder) {
+        if (value instanceof Map) {
+            builder.append('{');
+            new TreeMap<>((Map<String, Object>) value).forEach((k, v) -> {
+                builder.append(JSONUtil.quote(k)).append(':');
+                canonical(v, k, builder);
+                builder.append(',');
+            });
+            builder.append('}');
+        } else if (value instanceof List) {
+            List<String> items = new ArrayList<>();
+            for (Object item : (List<Object>) value) {
+                StringBuilder itemBuilder = new StringBuilder();
+                canonical(item, null, itemBuilder);
+                items.add(itemBuilder.toString());
+            }
+            if (UNORDERED.contains(name)) {
+                Collections.sort(items);
+            }
+            builder.append('[').append(StrUtil.join(",", items)).append(']');
+        } else if (value instanceof String) {
+            builder.append(JSONUtil.quote((String) value));
+        } else {
+            builder.append(value);
+        }
+    }
+
+    private static class Entry {
+
+        private final String value;
+        private final long weight;
+        private final long generation;
+        private final long created;
+
+        Entry(String value, long weight, long generation, long created) {
+            this.value = value;
+            this.weight = weight;
+            this.generation = generation;
+            this.created = created;
+        }
+    }
+}
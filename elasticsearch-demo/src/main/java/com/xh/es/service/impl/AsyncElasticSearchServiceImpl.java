@@ -0,0 +1,509 @@
+package com.xh.es.service.impl;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.xh.es.common.annotation.ExecutionMethod;
+import com.xh.es.common.constant.ElasticSearchConst;
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchHitMapper;
+import com.xh.es.common.util.ElasticSearchSourceUtil;
+import com.xh.es.common.util.ElasticSearchUtil;
+import com.xh.es.model.dto.*;
+import com.xh.es.service.AsyncElasticSearchService;
+import com.xh.es.service.async.ElasticSearchAsyncOperation;
+import com.xh.es.service.cache.ElasticSearchDocumentCache;
+import com.xh.es.service.cache.ElasticSearchQueryCache;
+import com.xh.es.service.strategy.RawSearchPageStrategy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
+import org.elasticsearch.common.CheckedConsumer;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.Scroll;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * 基于 RestHighLevelClient 的 *Async 方法封装的非阻塞 ElasticsearchService 实现
+ * 每个方法返回一个 {@link ElasticSearchAsyncOperation}, 取消或超时时取消正在执行的 HTTP 请求
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Service
+public class AsyncElasticSearchServiceImpl<T> implements AsyncElasticSearchService<T> {
+
+    @Resource(name = "fromSizePageStrategy")
+    private RawSearchPageStrategy<T> fromSizePageStrategy;
+    @Resource(name = "searchAfterPageStrategy")
+    private RawSearchPageStrategy<T> searchAfterPageStrategy;
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ElasticSearchProperties elasticSearchProperties;
+    private final ElasticSearchDocumentCache elasticSearchDocumentCache;
+    private final ElasticSearchQueryCache elasticSearchQueryCache;
+    /**
+     * 处理请求结果的线程, 不在客户端的 IO 线程中反序列化
+     */
+    private final ExecutorService executorService;
+    /**
+     * 超时计时
+     */
+    private final ScheduledExecutorService scheduler;
+
+    public AsyncElasticSearchServiceImpl(RestHighLevelClient restHighLevelClient, ElasticSearchProperties elasticSearchProperties,
+                                         ElasticSearchDocumentCache elasticSearchDocumentCache, ElasticSearchQueryCache elasticSearchQueryCache) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.elasticSearchProperties = elasticSearchProperties;
+        this.elasticSearchDocumentCache = elasticSearchDocumentCache;
+        this.elasticSearchQueryCache = elasticSearchQueryCache;
+        int threads = elasticSearchProperties.getAsync().getThreads() > 0 ? elasticSearchProperties.getAsync().getThreads() : Runtime.getRuntime().availableProcessors();
+        this.executorService = Executors.newFixedThreadPool(threads, ThreadUtil.newNamedThreadFactory("es-async-", true));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("es-async-timeout-", true));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        executorService.shutdownNow();
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步添加单个(文档)", des = "入参Object var2,String id，返回boolean")
+    public CompletableFuture<Boolean> createDocument(Object var2, String index, String id) {
+        IndexRequest indexRequest = this.indexRequest(var2, index, id);
+        ElasticSearchAsyncOperation<Boolean> operation = this.operation();
+        operation.<IndexResponse>request(listener -> restHighLevelClient.indexAsync(indexRequest, RequestOptions.DEFAULT, this.invalidate(indexRequest, listener)),
+                response -> operation.complete(RestStatus.CREATED.equals(response.status())));
+        return operation;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步添加单个(文档)", des = "入参Object var2,String id，返回T")
+    public CompletableFuture<T> createDocument(Class<T> var1, Object var2, String index, String id) {
+        IndexRequest indexRequest = this.indexRequest(var2, index, id);
+        ElasticSearchAsyncOperation<T> operation = this.operation();
+        operation.<IndexResponse>request(listener -> restHighLevelClient.indexAsync(indexRequest, RequestOptions.DEFAULT, this.invalidate(indexRequest, listener)), response -> {
+            // 创建成功后 ES 中的文档即为本次写入的 _source,直接转换,不再额外 get 一次
+            operation.complete(RestStatus.CREATED.equals(response.status()) ? ElasticSearchHitMapper.toBean(indexRequest.id(), indexRequest.source().utf8ToString(), var1) : null);
+        });
+        return operation;
+    }
+
+    private IndexRequest indexRequest(Object var2, String index, String id) {
+        IndexRequest indexRequest = new IndexRequest(index);
+        indexRequest.id(id);
+        ElasticSearchSourceUtil.source(indexRequest, var2);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), indexRequest);
+        return indexRequest;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据id删除(文档)", des = "入参String id,返回boolean")
+    public CompletableFuture<Boolean> deleteDocument(String index, String id) {
+        return this.deleteDocument(index, id, null);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据id删除(文档)", des = "入参String id、routing,返回boolean")
+    public CompletableFuture<Boolean> deleteDocument(String index, String id, String routing) {
+        DeleteRequest deleteRequest = new DeleteRequest(index, id);
+        deleteRequest.routing(routing);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), deleteRequest);
+        ElasticSearchAsyncOperation<Boolean> operation = this.operation();
+        operation.<DeleteResponse>request(listener -> restHighLevelClient.deleteAsync(deleteRequest, RequestOptions.DEFAULT, this.invalidate(deleteRequest, listener)),
+                response -> operation.complete(RestStatus.OK.equals(response.status())));
+        return operation;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据多条件进行删除文档,并返回删除数量")
+    public CompletableFuture<Long> deleteDocumentByCondition(String index, List<ElasticSearchConditionDTO> conditionDTOS) {
+        DeleteByQueryRequest deleteByQueryRequest = new DeleteByQueryRequest(index);
+        deleteByQueryRequest.setQuery(ElasticSearchUtil.conditionCombination(new ElasticSearchSearchDTO(conditionDTOS)).query());
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), deleteByQueryRequest);
+        ElasticSearchAsyncOperation<Long> operation = this.operation();
+        operation.<BulkByScrollResponse>request(listener -> restHighLevelClient.deleteByQueryAsync(deleteByQueryRequest, RequestOptions.DEFAULT,
+                ActionListener.runBefore(listener, () -> elasticSearchDocumentCache.invalidateAll(index))),
+                response -> operation.complete(response.getDeleted()));
+        return operation;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据id修改(文档)", des = "入参 Object、id,返回boolean")
+    public CompletableFuture<Boolean> updateDocument(Object var2, String index, String id) {
+        UpdateRequest updateRequest = new UpdateRequest(index, id);
+        ElasticSearchSourceUtil.doc(updateRequest, var2);
+        return this.update(updateRequest, response -> RestStatus.OK.equals(response.status()));
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据id修改(文档)", des = "入参 Object、id,返回T")
+    public CompletableFuture<T> updateDocument(Class<T> var1, Object var2, String index, String id) {
+        UpdateRequest updateRequest = new UpdateRequest(index, id);
+        // 更新后的文档随更新结果一起返回,不再额外 get 一次
+        ElasticSearchSourceUtil.doc(updateRequest, var2).fetchSource(true);
+        return this.update(updateRequest, response -> RestStatus.OK.equals(response.status()) ? this.toBean(var1, response) : null);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据id更新或创建(文档)", des = "入参 Object、id,返回boolean")
+    public CompletableFuture<Boolean> upsertDocument(Object var2, String index, String id) {
+        UpdateRequest updateRequest = new UpdateRequest(index, id);
+        ElasticSearchSourceUtil.doc(updateRequest, var2).docAsUpsert(true);
+        return this.update(updateRequest, this::upserted);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据id更新或创建(文档)", des = "入参 Object、id,返回T")
+    public CompletableFuture<T> upsertDocument(Class<T> var1, Object var2, String index, String id) {
+        UpdateRequest updateRequest = new UpdateRequest(index, id);
+        ElasticSearchSourceUtil.doc(updateRequest, var2).docAsUpsert(true).fetchSource(true);
+        return this.update(updateRequest, response -> this.upserted(response) ? this.toBean(var1, response) : null);
+    }
+
+    /**
+     * 执行 update, 返回后(成功或失败)移除文档缓存
+     */
+    private <R> CompletableFuture<R> update(UpdateRequest updateRequest, Function<UpdateResponse, R> result) {
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), updateRequest);
+        ElasticSearchAsyncOperation<R> operation = this.operation();
+        operation.<UpdateResponse>request(listener -> restHighLevelClient.updateAsync(updateRequest, RequestOptions.DEFAULT, this.invalidate(updateRequest, listener)),
+                response -> operation.complete(result.apply(response)));
+        return operation;
+    }
+
+    /**
+     * 更新(200)或创建(201)都视为成功
+     */
+    private boolean upserted(UpdateResponse response) {
+        return RestStatus.OK.equals(response.status()) || RestStatus.CREATED.equals(response.status());
+    }
+
+    private T toBean(Class<T> var1, UpdateResponse update) {
+        if (null == update.getGetResult() || update.getGetResult().isSourceEmpty()) {
+            return null;
+        }
+        return ElasticSearchHitMapper.toBean(update.getId(), update.getGetResult().sourceAsString(), var1);
+    }
+
+    /**
+     * 写入请求返回后(成功或失败)先移除文档缓存, 再交给 listener
+     */
+    private <S> ActionListener<S> invalidate(DocWriteRequest<?> request, ActionListener<S> listener) {
+        return ActionListener.runBefore(listener, () -> elasticSearchDocumentCache.invalidate(request));
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据id查询(文档)", des = "入参 id")
+    public CompletableFuture<T> getDocument(Class<T> var1, String index, String id) {
+        return this.getDocument(var1, index, id, null);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据id查询(文档)", des = "入参 id、routing")
+    public CompletableFuture<T> getDocument(Class<T> var1, String index, String id, String routing) {
+        // 缓存键不包含 _routing, 自定义 routing 的读取不经过缓存
+        boolean cacheable = null == routing;
+        String source = cacheable ? elasticSearchDocumentCache.get(index, id) : null;
+        if (null != source) {
+            return CompletableFuture.completedFuture(ElasticSearchHitMapper.toBean(id, source, var1));
+        }
+        long sequence = elasticSearchDocumentCache.begin(index);
+        GetRequest getRequest = new GetRequest(index, id);
+        getRequest.routing(routing);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), getRequest);
+        ElasticSearchAsyncOperation<T> operation = this.operation();
+        operation.<GetResponse>request(listener -> restHighLevelClient.getAsync(getRequest, RequestOptions.DEFAULT, listener), response -> {
+            if (!response.isExists()) {
+                operation.complete(null);
+                return;
+            }
+            if (cacheable) {
+                elasticSearchDocumentCache.put(index, id, response.getSourceAsString(), sequence);
+            }
+            operation.complete(ElasticSearchHitMapper.toBean(id, response.getSourceAsString(), var1));
+        });
+        return operation;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据ids批量查询(文档)", des = "入参 ids,返回Map<String, T>")
+    public CompletableFuture<Map<String, T>> getDocuments(Class<T> var1, String index, Collection<String> ids) {
+        long sequence = elasticSearchDocumentCache.begin(index);
+        // 按 ids 的顺序放入, 已缓存的直接使用,其余的通过一次 _mget 读取
+        Map<String, String> sources = new LinkedHashMap<>(ids.size());
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        for (String id : ids) {
+            if (sources.containsKey(id)) {
+                continue;
+            }
+            String source = elasticSearchDocumentCache.get(index, id);
+            sources.put(id, source);
+            if (null == source) {
+                multiGetRequest.add(index, id);
+            }
+        }
+        ElasticSearchAsyncOperation<Map<String, T>> operation = this.operation();
+        if (multiGetRequest.getItems().isEmpty()) {
+            operation.complete(this.toBeans(var1, sources));
+            return operation;
+        }
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), multiGetRequest);
+        operation.<MultiGetResponse>request(listener -> restHighLevelClient.mgetAsync(multiGetRequest, RequestOptions.DEFAULT, listener), response -> {
+            for (MultiGetItemResponse item : response.getResponses()) {
+                if (item.isFailed()) {
+                    throw item.getFailure().getFailure();
+                }
+                if (item.getResponse().isExists()) {
+                    elasticSearchDocumentCache.put(index, item.getId(), item.getResponse().getSourceAsString(), sequence);
+                    sources.put(item.getId(), item.getResponse().getSourceAsString());
+                }
+            }
+            operation.complete(this.toBeans(var1, sources));
+        });
+        return operation;
+    }
+
+    private Map<String, T> toBeans(Class<T> var1, Map<String, String> sources) {
+        Map<String, T> documents = new LinkedHashMap<>(sources.size());
+        sources.forEach((id, source) -> {
+            if (null != source) {
+                documents.put(id, ElasticSearchHitMapper.toBean(id, source, var1));
+            }
+        });
+        return documents;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据条件查询(list)", des = "入参 ESSearchDto对象,from-size/scroll,count超出10000为scroll,不支持pit")
+    public CompletableFuture<List<T>> getListByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto) {
+        SearchRequest searchRequest = new SearchRequest(index);
+        SearchSourceBuilder searchSourceBuilder = ElasticSearchUtil.conditionCombination(searchDto);
+        // 第一页同时打开 scroll, total hits 用于选择分页方式,只需要知道是否超过 from-size 的上限;
+        // 未超过上限时剩余部分使用 from-size(结束时清除 scroll), 超过上限时从第一页继续 scroll,第一页不会被丢弃;
+        // 异步时不支持 PIT(PIT 只在同步的 ElasticSearchService 中提供),忽略 deep-page-strategy
+        searchSourceBuilder.trackTotalHitsUpTo(ElasticSearchConst.MAX_FROMSIZE_COUNT);
+        searchRequest.source(searchSourceBuilder);
+        ElasticSearchAsyncOperation<List<T>> operation = this.operation();
+        this.scroll(operation, var1, searchRequest, this.scrollPageRequest(), list -> list, (first, list) -> {
+            TotalHits totalHits = first.getHits().getTotalHits();
+            boolean exact = null != totalHits && TotalHits.Relation.EQUAL_TO.equals(totalHits.relation);
+            if (!exact) {
+                return true;
+            }
+            if (totalHits.value <= ElasticSearchConst.SCROLL_LIMIT) {
+                // 第一页已包含全部结果
+                operation.complete(list);
+                return false;
+            }
+            int remaining = Math.toIntExact(totalHits.value) - ElasticSearchConst.SCROLL_LIMIT;
+            searchRequest.scroll((Scroll) null);
+            operation.<SearchResponse>request(listener -> fromSizePageStrategy.searchAsync(searchRequest, RequestFromSizePage.of(ElasticSearchConst.SCROLL_LIMIT, remaining), listener), rest -> {
+                list.addAll(ElasticSearchUtil.searchResponseToList(rest, var1));
+                operation.complete(list);
+            });
+            return false;
+        });
+        return operation;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据条件分页查询(page)")
+    public CompletableFuture<Page<T>> getPageByCondition(Class<T> var1, String index, ElasticSearchSearchDTO esSearchDto, PageRequest pageRequest) {
+        if (null == pageRequest) {
+            throw new RuntimeException("ES查询分页时,分页对象不可以为空!");
+        }
+        SearchRequest searchRequest = new SearchRequest(index);
+        SearchSourceBuilder searchSourceBuilder = ElasticSearchUtil.conditionCombination(esSearchDto);
+        // 总数随本页的查询一起返回,不再单独 count
+        this.trackTotalHits(searchSourceBuilder);
+        searchRequest.source(searchSourceBuilder);
+        Pageable pageable = org.springframework.data.domain.PageRequest.of(pageRequest.getPage(), pageRequest.getLimit());
+        ElasticSearchAsyncOperation<Page<T>> operation = this.operation();
+        if (pageRequest instanceof RequestFromSizePage || pageRequest instanceof RequestSearchAfterPage) {
+            boolean searchAfter = pageRequest instanceof RequestSearchAfterPage;
+            RawSearchPageStrategy<T> strategy = searchAfter ? searchAfterPageStrategy : fromSizePageStrategy;
+            operation.<SearchResponse>request(listener -> strategy.searchAsync(searchRequest, pageRequest, listener), response -> {
+                List<T> list = ElasticSearchUtil.searchResponseToList(response, var1, searchAfter);
+                TotalHits totalHits = response.getHits().getTotalHits();
+                operation.complete(new PageImpl<>(list, pageable, null == totalHits ? -1 : totalHits.value));
+            });
+        } else if (pageRequest instanceof RequestScrollPage) {
+            // scroll 返回全部结果,数量即为总数
+            this.scroll(operation, var1, searchRequest, (RequestScrollPage) pageRequest, list -> new PageImpl<>(list, pageable, list.size()));
+        } else {
+            throw new RuntimeException("ES异步分页查询时,分页对象只能是 RequestFromSizePage、RequestSearchAfterPage 或 RequestScrollPage!");
+        }
+        return operation;
+    }
+
+    /**
+     * scroll 依次异步请求每一页, 上一页返回后才发出下一页的请求;
+     * 结束、失败、取消或超时时清除 scroll, 结束后才返回的响应(不再处理)也会清除其中的 scroll
+     */
+    private <R> void scroll(ElasticSearchAsyncOperation<R> operation, Class<T> var1, SearchRequest searchRequest, RequestScrollPage requestScrollPage,
+                            Function<List<T>, R> result) {
+        this.scroll(operation, var1, searchRequest, requestScrollPage, result, (first, list) -> true);
+    }
+
+    /**
+     * @param firstPage 第一页返回后调用(参数为第一页的响应和已经放入第一页的结果), 返回 false 时不再继续 scroll,由其负责完成操作
+     */
+    private <R> void scroll(ElasticSearchAsyncOperation<R> operation, Class<T> var1, SearchRequest searchRequest, RequestScrollPage requestScrollPage,
+                            Function<List<T>, R> result, BiPredicate<SearchResponse, List<T>> firstPage) {
+        if (null == requestScrollPage.getScrollTimeValue()) {
+            throw new RuntimeException("ES使用SCROLL分页,必须要传入失效时间!");
+        }
+        Scroll scroll = new Scroll(requestScrollPage.getScrollTimeValue());
+        searchRequest.scroll(scroll);
+        searchRequest.source().size(requestScrollPage.getLimit());
+        List<T> list = new ArrayList<>();
+        AtomicReference<String> scrollId = new AtomicReference<>();
+        operation.whenComplete((r, e) -> this.clearScroll(scrollId.getAndSet(null)));
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), searchRequest);
+        operation.request(listener -> restHighLevelClient.searchAsync(searchRequest, RequestOptions.DEFAULT, this.scrollListener(operation, scrollId, listener)),
+                new CheckedConsumer<SearchResponse, Exception>() {
+
+                    private boolean first = true;
+
+                    @Override
+                    public void accept(SearchResponse response) {
+                        list.addAll(ElasticSearchUtil.searchResponseToList(response, var1));
+                        if (first) {
+                            first = false;
+                            if (!firstPage.test(response, list)) {
+                                return;
+                            }
+                        }
+                        if (response.getHits().getHits().length < requestScrollPage.getLimit()) {
+                            // 不满一页说明已是最后一页
+                            operation.complete(result.apply(list));
+                            return;
+                        }
+                        SearchScrollRequest scrollRequest = new SearchScrollRequest(response.getScrollId());
+                        scrollRequest.scroll(scroll);
+                        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), scrollRequest);
+                        operation.<SearchResponse>request(listener -> restHighLevelClient.scrollAsync(scrollRequest, RequestOptions.DEFAULT, scrollListener(operation, scrollId, listener)), this);
+                    }
+                });
+    }
+
+    /**
+     * 响应返回时(IO 线程中)先记录 scrollId; 此时操作已经结束(取消、超时)则不会再处理该响应,直接清除 scroll,
+     * 清除前 getAndSet(null), 与结束时的清除之间只会执行一次
+     */
+    private ActionListener<SearchResponse> scrollListener(ElasticSearchAsyncOperation<?> operation, AtomicReference<String> scrollId, ActionListener<SearchResponse> listener) {
+        return ActionListener.wrap(response -> {
+            scrollId.set(response.getScrollId());
+            if (operation.isDone()) {
+                this.clearScroll(scrollId.getAndSet(null));
+            }
+            listener.onResponse(response);
+        }, listener::onFailure);
+    }
+
+    private void clearScroll(String scrollId) {
+        if (null == scrollId) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollId);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), clearScrollRequest);
+        restHighLevelClient.clearScrollAsync(clearScrollRequest, RequestOptions.DEFAULT, ActionListener.wrap(response -> {
+            if (!response.isSucceeded()) {
+                log.error("scroll清除失败,scrollId={}", scrollId);
+            }
+        }, e -> log.error("scroll清除失败,scrollId={}", scrollId, e)));
+    }
+
+    private RequestScrollPage scrollPageRequest() {
+        return RequestScrollPage.of(ElasticSearchConst.SCROLL_LIMIT, TimeValue.timeValueMinutes(elasticSearchProperties.getSearch().getDeepPageKeepAliveMinutes()));
+    }
+
+    /**
+     * 按配置设置 track_total_hits: true 精确统计, 数字表示最多精确统计到该值
+     */
+    private void trackTotalHits(SearchSourceBuilder searchSourceBuilder) {
+        String trackTotalHits = elasticSearchProperties.getSearch().getTrackTotalHits();
+        if (Boolean.TRUE.toString().equalsIgnoreCase(trackTotalHits)) {
+            searchSourceBuilder.trackTotalHits(true);
+        } else {
+            searchSourceBuilder.trackTotalHitsUpTo(Integer.parseInt(trackTotalHits));
+        }
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据条件统计(count)")
+    public CompletableFuture<Long> count(String index, QueryBuilder query) {
+        String key = null;
+        long generation = 0;
+        if (elasticSearchQueryCache.isEnabled() && null != query && !index.contains(",")) {
+            key = elasticSearchQueryCache.key(index, query, "count");
+            String cached = elasticSearchQueryCache.get(index, key);
+            if (null != cached) {
+                return CompletableFuture.completedFuture(Long.parseLong(cached));
+            }
+            generation = elasticSearchQueryCache.generation(index);
+        }
+        CountRequest countRequest = new CountRequest(index);
+        countRequest.query(query);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), countRequest);
+        String cacheKey = key;
+        long cacheGeneration = generation;
+        ElasticSearchAsyncOperation<Long> operation = this.operation();
+        operation.<CountResponse>request(listener -> restHighLevelClient.countAsync(countRequest, RequestOptions.DEFAULT, listener), response -> {
+            if (null != cacheKey) {
+                elasticSearchQueryCache.put(index, cacheKey, String.valueOf(response.getCount()), cacheGeneration);
+            }
+            operation.complete(response.getCount());
+        });
+        return operation;
+    }
+
+    private <R> ElasticSearchAsyncOperation<R> operation() {
+        return new ElasticSearchAsyncOperation<>(executorService, scheduler, elasticSearchProperties.getAsync().getTimeoutMillis());
+    }
+}
@@ -0,0 +1,137 @@
+package com.xh.es.service.impl;
+
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchSourceUtil;
+import com.xh.es.service.ElasticSearchIngestService;
+import com.xh.es.service.cache.ElasticSearchDocumentCache;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 BulkProcessor 的常驻写入管道实现
+ * BulkProcessor 不做重试(noBackoff),保证 bulk 返回的 item 与请求一一对应,
+ * 被拒绝(429)的文档会以异常结束对应的 CompletableFuture,由调用方决定是否重新提交
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Service
+public class ElasticSearchIngestServiceImpl implements ElasticSearchIngestService, BulkProcessor.Listener {
+
+    /**
+     * 在途文档 -> 对应的 future, DocWriteRequest 未重写 equals,这里按对象引用匹配
+     */
+    private final Map<DocWriteRequest<?>, CompletableFuture<BulkItemResponse>> pending = new ConcurrentHashMap<>();
+
+    private final BulkProcessor bulkProcessor;
+    private final ElasticSearchProperties elasticSearchProperties;
+    private final ElasticSearchDocumentCache elasticSearchDocumentCache;
+
+    public ElasticSearchIngestServiceImpl(RestHighLevelClient restHighLevelClient, ElasticSearchProperties elasticSearchProperties,
+                                          ElasticSearchDocumentCache elasticSearchDocumentCache) {
+        this.elasticSearchProperties = elasticSearchProperties;
+        this.elasticSearchDocumentCache = elasticSearchDocumentCache;
+        ElasticSearchProperties.Bulk bulk = elasticSearchProperties.getBulk();
+        this.bulkProcessor = BulkProcessor.builder(
+                (request, listener) -> restHighLevelClient.bulkAsync(request, RequestOptions.DEFAULT, listener), this)
+                .setBulkActions(bulk.getActions())
+                .setBulkSize(new ByteSizeValue(bulk.getSizeMb(), ByteSizeUnit.MB))
+                .setFlushInterval(TimeValue.timeValueSeconds(bulk.getFlushIntervalSeconds()))
+                .setConcurrentRequests(bulk.getConcurrentRequests())
+                .setBackoffPolicy(BackoffPolicy.noBackoff())
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<BulkItemResponse> addDocument(Object var2, String index, String id) {
+        IndexRequest indexRequest = new IndexRequest(index);
+        indexRequest.id(id);
+        ElasticSearchSourceUtil.source(indexRequest, var2);
+        CompletableFuture<BulkItemResponse> future = new CompletableFuture<>();
+        pending.put(indexRequest, future);
+        try {
+            bulkProcessor.add(indexRequest);
+        } catch (RuntimeException e) {
+            // 管道已关闭等情况
+            pending.remove(indexRequest);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void flush() {
+        bulkProcessor.flush();
+    }
+
+    @Override
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        return bulkProcessor.awaitClose(timeout, unit);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (!this.close(elasticSearchProperties.getBulk().getCloseTimeoutSeconds(), TimeUnit.SECONDS)) {
+            log.error("写入管道关闭超时,仍有{}个文档未确认写入结果", pending.size());
+        }
+    }
+
+    @Override
+    public void beforeBulk(long executionId, BulkRequest request) {
+        log.debug("bulk[{}] 开始提交,文档数量:{},大小:{}字节", executionId, request.numberOfActions(), request.estimatedSizeInBytes());
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+        List<DocWriteRequest<?>> requests = request.requests();
+        requests.forEach(elasticSearchDocumentCache::invalidate);
+        BulkItemResponse[] items = response.getItems();
+        for (int i = 0; i < requests.size(); i++) {
+            CompletableFuture<BulkItemResponse> future = pending.remove(requests.get(i));
+            if (null == future) {
+                continue;
+            }
+            BulkItemResponse item = items[i];
+            if (item.isFailed()) {
+                future.completeExceptionally(item.getFailure().getCause());
+            } else {
+                future.complete(item);
+            }
+        }
+        if (response.hasFailures()) {
+            log.error("bulk[{}] 存在写入失败的文档:{}", executionId, response.buildFailureMessage());
+        }
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+        log.error("bulk[{}] 提交失败,文档数量:{}", executionId, request.numberOfActions(), failure);
+        request.requests().forEach(r -> {
+            elasticSearchDocumentCache.invalidate(r);
+            CompletableFuture<BulkItemResponse> future = pending.remove(r);
+            if (null != future) {
+                future.completeExceptionally(failure);
+            }
+        });
+    }
+}
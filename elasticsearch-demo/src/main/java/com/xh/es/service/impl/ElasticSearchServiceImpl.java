@@ -2,30 +2,53 @@ package com.xh.es.service.impl;
 
 
 import cn.hutool.core.map.MapUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.xh.es.common.annotation.ExecutionMethod;
 import com.xh.es.common.constant.ElasticSearchConst;
 import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchHitMapper;
+import com.xh.es.common.util.ElasticSearchSourceUtil;
 import com.xh.es.common.util.ElasticSearchUtil;
 import com.xh.es.model.dto.*;
 import com.xh.es.service.ElasticSearchService;
-import com.xh.es.service.strategy.ElasticSearchRequestPageStrategy;
+import com.xh.es.service.bulk.ElasticSearchBulkExecutor;
+import com.xh.es.service.cache.ElasticSearchDocumentCache;
+import com.xh.es.service.cache.ElasticSearchQueryCache;
+import com.xh.es.service.loader.ElasticSearchDocumentLoader;
+import com.xh.es.service.script.ElasticSearchScriptRegistry;
+import com.xh.es.service.strategy.HitIterablePageStrategy;
+import com.xh.es.service.strategy.IterablePageStrategy;
+import com.xh.es.service.strategy.RawSearchPageStrategy;
 import com.xh.es.service.strategy.RequestPageContext;
+import com.xh.es.service.strategy.ScrollPageStrategyImpl;
+import com.xh.es.service.strategy.ScrollSliceExporter;
+import com.xh.es.service.strategy.SearchAfterPageStrategyImpl;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.client.core.CountResponse;
@@ -33,32 +56,63 @@ import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.CreateIndexResponse;
 import org.elasticsearch.client.indices.GetIndexRequest;
 import org.elasticsearch.client.indices.GetIndexResponse;
+import org.elasticsearch.client.tasks.CancelTasksRequest;
+import org.elasticsearch.client.tasks.CancelTasksResponse;
+import org.elasticsearch.client.tasks.TaskId;
+import org.elasticsearch.client.tasks.TaskSubmissionResponse;
+import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.reindex.AbstractBulkByScrollRequest;
 import org.elasticsearch.index.reindex.BulkByScrollResponse;
 import org.elasticsearch.index.reindex.BulkByScrollTask;
 import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.elasticsearch.index.reindex.UpdateByQueryRequest;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.script.Script;
-import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.Scroll;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.StoredFieldsContext;
+import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.data.util.StreamUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.Resource;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 基于 RestHighLevelClient 封装的ElasticsearchService 实现
@@ -71,67 +125,158 @@ import java.util.Map;
 public class ElasticSearchServiceImpl<T> implements ElasticSearchService<T> {
 
     @Resource(name = "fromSizePageStrategy")
-    private ElasticSearchRequestPageStrategy<T> fromSizePageStrategy;
+    private RawSearchPageStrategy<T> fromSizePageStrategy;
     @Resource(name = "scrollPageStrategy")
-    private ElasticSearchRequestPageStrategy<T> scrollPageStrategy;
+    private ScrollPageStrategyImpl<T> scrollPageStrategy;
     @Resource(name = "searchAfterPageStrategy")
-    private ElasticSearchRequestPageStrategy<T> searchAfterPageStrategy;
+    private SearchAfterPageStrategyImpl<T> searchAfterPageStrategy;
+    @Resource(name = "pitPageStrategy")
+    private IterablePageStrategy<T> pitPageStrategy;
+    @Resource(name = "scrollSliceExporter")
+    private ScrollSliceExporter<T> scrollSliceExporter;
 
     private RestHighLevelClient restHighLevelClient;
     private ElasticSearchProperties elasticSearchProperties;
+    private ElasticSearchBulkExecutor elasticSearchBulkExecutor;
+    private ElasticSearchScriptRegistry elasticSearchScriptRegistry;
+    private ElasticSearchDocumentLoader elasticSearchDocumentLoader;
+    private ElasticSearchDocumentCache elasticSearchDocumentCache;
+    private ElasticSearchQueryCache elasticSearchQueryCache;
+    /**
+     * 未确认结束的异步任务id -> 涉及的索引, 任务结束后再清除一次这些索引的文档缓存
+     */
+    private final Map<String, String[]> taskIndices = new ConcurrentHashMap<>();
 
-    public ElasticSearchServiceImpl(RestHighLevelClient restHighLevelClient, ElasticSearchProperties elasticSearchProperties) {
+    public ElasticSearchServiceImpl(RestHighLevelClient restHighLevelClient, ElasticSearchProperties elasticSearchProperties,
+                                    ElasticSearchBulkExecutor elasticSearchBulkExecutor, ElasticSearchScriptRegistry elasticSearchScriptRegistry,
+                                    ElasticSearchDocumentLoader elasticSearchDocumentLoader, ElasticSearchDocumentCache elasticSearchDocumentCache,
+                                    ElasticSearchQueryCache elasticSearchQueryCache) {
         this.restHighLevelClient = restHighLevelClient;
         this.elasticSearchProperties = elasticSearchProperties;
+        this.elasticSearchBulkExecutor = elasticSearchBulkExecutor;
+        this.elasticSearchScriptRegistry = elasticSearchScriptRegistry;
+        this.elasticSearchDocumentLoader = elasticSearchDocumentLoader;
+        this.elasticSearchDocumentCache = elasticSearchDocumentCache;
+        this.elasticSearchQueryCache = elasticSearchQueryCache;
     }
 
 
     @Override
     @ExecutionMethod(name = "es-添加单个(文档)", des = "入参Object var2,String id，返回boolean")
     public boolean createDocument(Object var2, String index, String id) throws IOException {
-        IndexRequest indexRequest = new IndexRequest(index);
-        indexRequest.id(id);
-        indexRequest.source(JSONUtil.toJsonStr(var2), XContentType.JSON);
-
-        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), indexRequest);
-
-        IndexResponse indexResponse = restHighLevelClient.index(indexRequest, RequestOptions.DEFAULT);
-        RestStatus status = indexResponse.status();
-        return RestStatus.CREATED.equals(status);
+        return this.index(this.indexRequest(var2, index, id));
     }
 
     @Override
     @ExecutionMethod(name = "es-添加单个(文档)", des = "入参Object var2,String id，返回T")
     public T createDocument(Class<T> var1, Object var2, String index, String id) throws IOException {
-        if (this.createDocument(var2, index, id)) {
-            return this.getDocument(var1, index, id);
+        IndexRequest indexRequest = this.indexRequest(var2, index, id);
+        if (this.index(indexRequest)) {
+            // 创建成功后 ES 中的文档即为本次写入的 _source,直接转换,不再额外 get 一次
+            return ElasticSearchHitMapper.toBean(indexRequest.id(), indexRequest.source().utf8ToString(), var1);
         }
         return null;
     }
 
+    private IndexRequest indexRequest(Object var2, String index, String id) {
+        IndexRequest indexRequest = new IndexRequest(index);
+        indexRequest.id(id);
+        ElasticSearchSourceUtil.source(indexRequest, var2);
+        return indexRequest;
+    }
+
+    private boolean index(IndexRequest indexRequest) throws IOException {
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), indexRequest);
+
+        try {
+            IndexResponse indexResponse = restHighLevelClient.index(indexRequest, RequestOptions.DEFAULT);
+            RestStatus status = indexResponse.status();
+            return RestStatus.CREATED.equals(status);
+        } finally {
+            elasticSearchDocumentCache.invalidate(indexRequest);
+        }
+    }
+
     @Override
     @ExecutionMethod(name = "es-批量添加(文档)", des = "入参Map<String, Object> var,返回boolean")
     public boolean addBatchDocument(Map<String, Object> var, String index) throws IOException {
-        BulkRequest bulkRequest = new BulkRequest();
-        var.forEach((k, v) -> {
+        // 按需生成 IndexRequest,由 bulk 执行器按数量/大小拆分提交
+        Iterator<IndexRequest> requests = var.entrySet().stream().map(e -> {
             IndexRequest indexRequest = new IndexRequest(index);
-            indexRequest.id(k);
-            indexRequest.source(JSONUtil.toJsonStr(v), XContentType.JSON);
-            bulkRequest.add(indexRequest);
-        });
-        BulkResponse bulkResponse = restHighLevelClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-        RestStatus status = bulkResponse.status();
-        return RestStatus.OK.equals(status);
+            indexRequest.id(e.getKey());
+            ElasticSearchSourceUtil.source(indexRequest, e.getValue());
+            return indexRequest;
+        }).iterator();
+        return elasticSearchBulkExecutor.execute(requests).isSuccess();
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-流式批量添加(文档)", des = "入参Stream<E> stream,返回boolean")
+    public <E> boolean addBatchDocument(Stream<E> stream, Function<? super E, String> idExtractor, String index) throws IOException {
+        return this.addBatchDocument(stream.iterator(), idExtractor, index);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-流式批量添加(文档)", des = "入参Iterator<E> iterator,返回boolean")
+    public <E> boolean addBatchDocument(Iterator<E> iterator, Function<? super E, String> idExtractor, String index) throws IOException {
+        return this.addBatchDocument(iterator, idExtractor, null, index);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-流式批量添加(文档)", des = "入参Stream<E> stream、routing,返回boolean")
+    public <E> boolean addBatchDocument(Stream<E> stream, Function<? super E, String> idExtractor, Function<? super E, String> routingExtractor, String index) throws IOException {
+        return this.addBatchDocument(stream.iterator(), idExtractor, routingExtractor, index);
+    }
+
+    private <E> boolean addBatchDocument(Iterator<E> iterator, Function<? super E, String> idExtractor, Function<? super E, String> routingExtractor, String index) throws IOException {
+        Iterator<IndexRequest> requests = new Iterator<IndexRequest>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public IndexRequest next() {
+                E e = iterator.next();
+                IndexRequest indexRequest = new IndexRequest(index);
+                indexRequest.id(idExtractor.apply(e));
+                if (null != routingExtractor) {
+                    indexRequest.routing(routingExtractor.apply(e));
+                }
+                ElasticSearchSourceUtil.source(indexRequest, e);
+                return indexRequest;
+            }
+        };
+        ElasticSearchBulkResultDTO result = elasticSearchBulkExecutor.execute(requests, false);
+        log.info("流式批量添加文档完成,成功:{},失败:{}", result.getSucceededCount(), result.getFailedItems().size());
+        return result.isSuccess();
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-获取bulk限流指标")
+    public ElasticSearchBulkLimiterMetricsDTO getBulkLimiterMetrics() {
+        return elasticSearchBulkExecutor.getLimiterMetrics();
     }
 
     @Override
     @ExecutionMethod(name = "es-根据id删除(文档)", des = "入参String id,返回boolean")
     public boolean deleteDocument(String index, String id) throws IOException {
+        return this.deleteDocument(index, id, null);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据id删除(文档)", des = "入参String id、routing,返回boolean")
+    public boolean deleteDocument(String index, String id, String routing) throws IOException {
         DeleteRequest deleteRequest = new DeleteRequest(index, id);
+        deleteRequest.routing(routing);
         ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), deleteRequest);
-        DeleteResponse delete = restHighLevelClient.delete(deleteRequest, RequestOptions.DEFAULT);
-        RestStatus status = delete.status();
-        return RestStatus.OK.equals(status);
+        try {
+            DeleteResponse delete = restHighLevelClient.delete(deleteRequest, RequestOptions.DEFAULT);
+            RestStatus status = delete.status();
+            return RestStatus.OK.equals(status);
+        } finally {
+            elasticSearchDocumentCache.invalidate(deleteRequest);
+        }
     }
 
     @Override
@@ -140,47 +285,45 @@ public class ElasticSearchServiceImpl<T> implements ElasticSearchService<T> {
         if (CollectionUtils.isEmpty(ids)) {
             throw new RuntimeException("ES根据_id集合进行批量操作时,ids不可以为空或size为0!");
         }
-        BulkRequest bulkRequest = new BulkRequest();
-        ids.forEach(id -> {
-            DeleteRequest deleteRequest = new DeleteRequest(index, id);
-            bulkRequest.add(deleteRequest);
-        });
-        BulkResponse bulkResponse = restHighLevelClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-        RestStatus status = bulkResponse.status();
-        return RestStatus.OK.equals(status);
+        Iterator<DeleteRequest> requests = ids.stream().map(id -> new DeleteRequest(index, id)).iterator();
+        return elasticSearchBulkExecutor.execute(requests).isSuccess();
     }
 
     @Override
     @ExecutionMethod(name = "es-根据key删除(文档)", des = "入参String key, Object value,返回boolean")
     public long deleteDocument(String index, String key, Object value) throws IOException {
         DeleteByQueryRequest deleteByQueryRequest = new DeleteByQueryRequest(index);
-        TermQueryBuilder termQueryBuilder = new TermQueryBuilder(key, value);
-        deleteByQueryRequest.setQuery(termQueryBuilder);
+        deleteByQueryRequest.setQuery(new TermQueryBuilder(key, value));
         ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), deleteByQueryRequest);
-        BulkByScrollResponse bulkByScrollResponse = restHighLevelClient.deleteByQuery(deleteByQueryRequest, RequestOptions.DEFAULT);
-        BulkByScrollTask.Status status = bulkByScrollResponse.getStatus();
-        return status.getDeleted();
+        try {
+            BulkByScrollResponse bulkByScrollResponse = restHighLevelClient.deleteByQuery(deleteByQueryRequest, RequestOptions.DEFAULT);
+            BulkByScrollTask.Status status = bulkByScrollResponse.getStatus();
+            return status.getDeleted();
+        } finally {
+            elasticSearchDocumentCache.invalidateAll(index);
+        }
     }
 
     @Override
     @ExecutionMethod(name = "es-根据多条件进行删除文档,并返回删除数量")
     public long deleteDocumentByCondition(String index, List<ElasticSearchConditionDTO> conditionDTOS) throws IOException {
-        DeleteByQueryRequest deleteByQueryRequest = new DeleteByQueryRequest(index);
-        // 获取组合完成的条件
-        SearchSourceBuilder searchSourceBuilder = ElasticSearchUtil.conditionCombination(new ElasticSearchSearchDTO(conditionDTOS));
-        deleteByQueryRequest.setQuery(searchSourceBuilder.query());
+        DeleteByQueryRequest deleteByQueryRequest = this.deleteByQueryRequest(index, conditionDTOS);
         ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), deleteByQueryRequest);
-        BulkByScrollResponse bulkByScrollResponse = restHighLevelClient.deleteByQuery(deleteByQueryRequest, RequestOptions.DEFAULT);
-        return bulkByScrollResponse.getDeleted();
+        try {
+            BulkByScrollResponse bulkByScrollResponse = restHighLevelClient.deleteByQuery(deleteByQueryRequest, RequestOptions.DEFAULT);
+            return bulkByScrollResponse.getDeleted();
+        } finally {
+            elasticSearchDocumentCache.invalidateAll(index);
+        }
     }
 
     @Override
     @ExecutionMethod(name = "es-根据id修改(文档)", des = "入参 Object、id,返回boolean")
     public boolean updateDocument(Object var2, String index, String id) throws IOException {
         UpdateRequest updateRequest = new UpdateRequest(index, id);
-        updateRequest.doc(JSONUtil.toJsonStr(var2), XContentType.JSON);
+        ElasticSearchSourceUtil.doc(updateRequest, var2);
         ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), updateRequest);
-        UpdateResponse update = restHighLevelClient.update(updateRequest, RequestOptions.DEFAULT);
+        UpdateResponse update = this.update(updateRequest);
         RestStatus status = update.status();
         return RestStatus.OK.equals(status);
     }
@@ -188,8 +331,14 @@ public class ElasticSearchServiceImpl<T> implements ElasticSearchService<T> {
     @Override
     @ExecutionMethod(name = "es-根据id修改(文档)", des = "入参 Object、id,返回T")
     public T updateDocument(Class<T> var1, Object var2, String index, String id) throws IOException {
-        if (this.updateDocument(var2, index, id)) {
-            return this.getDocument(var1, index, id);
+        UpdateRequest updateRequest = new UpdateRequest(index, id);
+        ElasticSearchSourceUtil.doc(updateRequest, var2);
+        // 更新后的文档随更新结果一起返回,不再额外 get 一次
+        updateRequest.fetchSource(true);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), updateRequest);
+        UpdateResponse update = this.update(updateRequest);
+        if (RestStatus.OK.equals(update.status())) {
+            return this.toBean(var1, update);
         }
         return null;
     }
@@ -197,57 +346,429 @@ public class ElasticSearchServiceImpl<T> implements ElasticSearchService<T> {
     @Override
     @ExecutionMethod(name = "es-根据多条件进行文档更新,并返回更新数量")
     public long updateDocumentByCondition(Object var2, String index, List<ElasticSearchConditionDTO> conditionDTOS) throws IOException {
-        UpdateByQueryRequest updateByQueryRequest = new UpdateByQueryRequest(index);
-        // 获取组合完成的条件
-        SearchSourceBuilder searchSourceBuilder = ElasticSearchUtil.conditionCombination(new ElasticSearchSearchDTO(conditionDTOS));
-        updateByQueryRequest.setQuery(searchSourceBuilder.query());
-        // 组合code
-        ScriptDTO scriptDto = ElasticSearchUtil.scriptCombination(var2);
-        updateByQueryRequest.setScript(new Script(ScriptType.INLINE,
-                scriptDto.getLang(),
-                scriptDto.getScript(), scriptDto.getParams()));
+        // 引用通用的存储脚本,字段名和值都在 params 中,不同字段组合不会产生新的脚本编译
+        UpdateByQueryRequest updateByQueryRequest = this.updateByQueryRequest(index, conditionDTOS, elasticSearchScriptRegistry.setFields(var2));
         ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), updateByQueryRequest);
-        BulkByScrollResponse bulkByScrollResponse = restHighLevelClient.updateByQuery(updateByQueryRequest, RequestOptions.DEFAULT);
-        return bulkByScrollResponse.getUpdated();
+        try {
+            BulkByScrollResponse bulkByScrollResponse = restHighLevelClient.updateByQuery(updateByQueryRequest, RequestOptions.DEFAULT);
+            return bulkByScrollResponse.getUpdated();
+        } finally {
+            elasticSearchDocumentCache.invalidateAll(index);
+        }
     }
 
     @Override
     @ExecutionMethod(name = "es-根据 ScriptDto 进行文档更新,并返回更新数量")
     public long updateDocumentByCondition(ScriptDTO scriptDto, String index, List<ElasticSearchConditionDTO> conditionDTOS) throws IOException {
+        UpdateByQueryRequest updateByQueryRequest = this.updateByQueryRequest(index, conditionDTOS, elasticSearchScriptRegistry.toScript(scriptDto));
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), updateByQueryRequest);
+        try {
+            BulkByScrollResponse bulkByScrollResponse = restHighLevelClient.updateByQuery(updateByQueryRequest, RequestOptions.DEFAULT);
+            return bulkByScrollResponse.getUpdated();
+        } finally {
+            elasticSearchDocumentCache.invalidateAll(index);
+        }
+    }
+
+    private DeleteByQueryRequest deleteByQueryRequest(String index, List<ElasticSearchConditionDTO> conditionDTOS) {
+        DeleteByQueryRequest deleteByQueryRequest = new DeleteByQueryRequest(index);
+        // 获取组合完成的条件
+        SearchSourceBuilder searchSourceBuilder = ElasticSearchUtil.conditionCombination(new ElasticSearchSearchDTO(conditionDTOS));
+        deleteByQueryRequest.setQuery(searchSourceBuilder.query());
+        return deleteByQueryRequest;
+    }
+
+    private UpdateByQueryRequest updateByQueryRequest(String index, List<ElasticSearchConditionDTO> conditionDTOS, Script script) {
         UpdateByQueryRequest updateByQueryRequest = new UpdateByQueryRequest(index);
         // 获取组合完成的条件
         SearchSourceBuilder searchSourceBuilder = ElasticSearchUtil.conditionCombination(new ElasticSearchSearchDTO(conditionDTOS));
         updateByQueryRequest.setQuery(searchSourceBuilder.query());
-        updateByQueryRequest.setScript(ElasticSearchUtil.toScript(scriptDto));
+        updateByQueryRequest.setScript(script);
+        return updateByQueryRequest;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步按单个条件删除文档,并返回任务id")
+    public String deleteDocumentAsync(String index, String key, Object value) throws IOException {
+        DeleteByQueryRequest deleteByQueryRequest = new DeleteByQueryRequest(index);
+        deleteByQueryRequest.setQuery(new TermQueryBuilder(key, value));
+        return this.submitTask(deleteByQueryRequest);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据多条件删除文档,并返回任务id")
+    public String deleteDocumentByConditionAsync(String index, List<ElasticSearchConditionDTO> conditionDTOS) throws IOException {
+        return this.submitTask(this.deleteByQueryRequest(index, conditionDTOS));
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据多条件更新文档,并返回任务id")
+    public String updateDocumentByConditionAsync(Object var2, String index, List<ElasticSearchConditionDTO> conditionDTOS) throws IOException {
+        return this.submitTask(this.updateByQueryRequest(index, conditionDTOS, elasticSearchScriptRegistry.setFields(var2)));
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-异步根据 ScriptDto 更新文档,并返回任务id")
+    public String updateDocumentByConditionAsync(ScriptDTO scriptDto, String index, List<ElasticSearchConditionDTO> conditionDTOS) throws IOException {
+        return this.submitTask(this.updateByQueryRequest(index, conditionDTOS, elasticSearchScriptRegistry.toScript(scriptDto)));
+    }
+
+    private String submitTask(DeleteByQueryRequest deleteByQueryRequest) throws IOException {
+        ElasticSearchProperties.Task task = elasticSearchProperties.getTask();
+        deleteByQueryRequest.setSlices(this.slices(task));
+        deleteByQueryRequest.setRequestsPerSecond(task.getRequestsPerSecond() > 0 ? task.getRequestsPerSecond() : Float.POSITIVE_INFINITY);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), deleteByQueryRequest);
+        TaskSubmissionResponse response = restHighLevelClient.submitDeleteByQueryTask(deleteByQueryRequest, RequestOptions.DEFAULT);
+        return this.track(response.getTask(), deleteByQueryRequest.indices());
+    }
+
+    /**
+     * 当前版本的 RestHighLevelClient 没有 submitUpdateByQueryTask,通过低级客户端以 wait_for_completion=false 提交
+     */
+    private String submitTask(UpdateByQueryRequest updateByQueryRequest) throws IOException {
+        ElasticSearchProperties.Task task = elasticSearchProperties.getTask();
         ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), updateByQueryRequest);
-        BulkByScrollResponse bulkByScrollResponse = restHighLevelClient.updateByQuery(updateByQueryRequest, RequestOptions.DEFAULT);
-        return bulkByScrollResponse.getUpdated();
+        Request request = new Request("POST", "/" + String.join(",", updateByQueryRequest.indices()) + "/_update_by_query");
+        request.addParameter("wait_for_completion", "false");
+        request.addParameter("slices", this.slices(task) == AbstractBulkByScrollRequest.AUTO_SLICES ? AbstractBulkByScrollRequest.AUTO_SLICES_VALUE : task.getSlices());
+        request.addParameter("requests_per_second", task.getRequestsPerSecond() > 0 ? String.valueOf(task.getRequestsPerSecond()) : "-1");
+        request.setJsonEntity(Strings.toString(updateByQueryRequest));
+        Response response = restHighLevelClient.getLowLevelClient().performRequest(request);
+        return this.track(JSONUtil.parseObj(EntityUtils.toString(response.getEntity())).getStr("task"), updateByQueryRequest.indices());
+    }
+
+    /**
+     * 异步任务在后台逐批修改文档,提交时清除一次索引的文档缓存和查询缓存,在 getTask 确认任务结束后再清除一次;
+     * 任务执行期间放入缓存的文档可能是旧的,最长在缓存过期后更新
+     */
+    private String track(String taskId, String[] indices) {
+        for (String index : indices) {
+            elasticSearchDocumentCache.invalidateAll(index);
+        }
+        if (elasticSearchDocumentCache.isEnabled() || elasticSearchQueryCache.isEnabled()) {
+            taskIndices.put(taskId, indices);
+        }
+        return taskId;
+    }
+
+    private int slices(ElasticSearchProperties.Task task) {
+        return AbstractBulkByScrollRequest.AUTO_SLICES_VALUE.equals(task.getSlices()) ? AbstractBulkByScrollRequest.AUTO_SLICES : Integer.parseInt(task.getSlices());
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-查询异步任务进度")
+    public ElasticSearchTaskDTO getTask(String taskId) throws IOException {
+        // 通过 _tasks 接口获取,任务结束后还包含 response/error 中的失败信息
+        Response response = restHighLevelClient.getLowLevelClient().performRequest(new Request("GET", "/_tasks/" + taskId));
+        JSONObject body = JSONUtil.parseObj(EntityUtils.toString(response.getEntity()));
+        JSONObject task = body.getJSONObject("task");
+        JSONObject status = task.getJSONObject("status");
+
+        ElasticSearchTaskDTO taskDTO = new ElasticSearchTaskDTO();
+        taskDTO.setTaskId(taskId);
+        taskDTO.setDescription(task.getStr("description"));
+        taskDTO.setCompleted(body.getBool("completed", false));
+        taskDTO.setRunningTimeMillis(TimeUnit.NANOSECONDS.toMillis(task.getLong("running_time_in_nanos", 0L)));
+        if (null != status) {
+            taskDTO.setCancelled(status.containsKey("canceled"));
+            taskDTO.setTotal(status.getLong("total", 0L));
+            taskDTO.setCreated(status.getLong("created", 0L));
+            taskDTO.setUpdated(status.getLong("updated", 0L));
+            taskDTO.setDeleted(status.getLong("deleted", 0L));
+            taskDTO.setBatches(status.getLong("batches", 0L));
+            taskDTO.setVersionConflicts(status.getLong("version_conflicts", 0L));
+            taskDTO.setNoops(status.getLong("noops", 0L));
+            taskDTO.setRequestsPerSecond(status.getFloat("requests_per_second", -1F));
+        }
+        JSONObject taskResponse = body.getJSONObject("response");
+        if (null != taskResponse && null != taskResponse.getJSONArray("failures")) {
+            taskResponse.getJSONArray("failures").forEach(failure -> taskDTO.getFailures().add(failure.toString()));
+        }
+        if (null != body.getJSONObject("error")) {
+            taskDTO.getFailures().add(body.getJSONObject("error").toString());
+        }
+        String[] indices = taskDTO.isCompleted() ? taskIndices.remove(taskId) : null;
+        if (null != indices) {
+            for (String index : indices) {
+                elasticSearchDocumentCache.invalidateAll(index);
+            }
+        }
+        return taskDTO;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-取消异步任务")
+    public boolean cancelTask(String taskId) throws IOException {
+        CancelTasksRequest cancelTasksRequest = new CancelTasksRequest.Builder().withTaskId(new TaskId(taskId)).build();
+        CancelTasksResponse response = restHighLevelClient.tasks().cancel(cancelTasksRequest, RequestOptions.DEFAULT);
+        return !response.getTasks().isEmpty();
     }
 
     @Override
     @ExecutionMethod(name = "es-根据Map -> k组成的id进行批量更新文档")
     public boolean updateBatchDocument(String index, Map<String, Object> params) throws IOException {
-        BulkRequest bulkRequest = new BulkRequest();
         if (MapUtil.isEmpty(params)) {
             throw new RuntimeException("ES进行批量操作时,入参Map不可以为空或size为0!");
         }
-        params.forEach((k, v) -> {
-            UpdateRequest updateRequest = new UpdateRequest(index, k);
-            updateRequest.doc(JSONUtil.toJsonStr(v), XContentType.JSON);
-            bulkRequest.add(updateRequest);
+        Iterator<UpdateRequest> requests = params.entrySet().stream().map(e -> {
+            UpdateRequest updateRequest = new UpdateRequest(index, e.getKey());
+            ElasticSearchSourceUtil.doc(updateRequest, e.getValue());
+            return updateRequest;
+        }).iterator();
+        return elasticSearchBulkExecutor.execute(requests).isSuccess();
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据ids进行带版本号的批量更新文档")
+    public boolean updateBatchDocument(Class<T> var1, String index, Collection<String> ids, BiFunction<String, T, Object> merge) throws IOException {
+        if (CollectionUtils.isEmpty(ids)) {
+            throw new RuntimeException("ES进行批量操作时,入参集合不可以为空或size为0!");
+        }
+        int conflictRetries = elasticSearchProperties.getBulk().getConflictRetries();
+        ElasticSearchBulkResultDTO result = new ElasticSearchBulkResultDTO();
+        Collection<String> pending = ids;
+        for (int attempt = 0; ; attempt++) {
+            Map<String, BulkItemResponse.Failure> readFailures = new LinkedHashMap<>();
+            List<IndexRequest> requests = this.versionedRequests(var1, index, pending, merge, readFailures);
+            ElasticSearchBulkResultDTO round = elasticSearchBulkExecutor.execute(requests.iterator());
+            // 读取失败的文档没有写入,同样计为失败
+            round.getFailedItems().putAll(readFailures);
+            List<String> conflicted = round.getFailedItems().entrySet().stream()
+                    .filter(e -> RestStatus.CONFLICT.equals(e.getValue().getStatus()))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            if (conflicted.isEmpty() || attempt >= conflictRetries) {
+                result.merge(round);
+                break;
+            }
+            // 只有冲突的文档需要重新读取、合并后重试,其余结果直接计入
+            conflicted.forEach(round.getFailedItems()::remove);
+            result.merge(round);
+            result.getRetriedIds().addAll(conflicted);
+            log.warn("带版本号的批量更新中有{}个文档版本冲突,进行第{}次重试", conflicted.size(), attempt + 1);
+            pending = conflicted;
+        }
+        if (!result.isSuccess()) {
+            log.error("带版本号的批量更新存在失败,index:{},失败id:{}", index, result.getFailedItems().keySet());
+        }
+        return result.isSuccess();
+    }
+
+    /**
+     * 按 bulk 文档数分批 mget 当前文档,生成携带 if_seq_no/if_primary_term 的写入请求
+     * 读取失败(分片不可用等)的文档放入 readFailures
+     */
+    private List<IndexRequest> versionedRequests(Class<T> var1, String index, Collection<String> ids, BiFunction<String, T, Object> merge,
+                                                 Map<String, BulkItemResponse.Failure> readFailures) throws IOException {
+        int batchSize = elasticSearchProperties.getBulk().getActions();
+        List<IndexRequest> requests = new ArrayList<>(ids.size());
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        Iterator<String> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            multiGetRequest.add(index, iterator.next());
+            if (multiGetRequest.getItems().size() < batchSize && iterator.hasNext()) {
+                continue;
+            }
+            ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), multiGetRequest);
+            for (MultiGetItemResponse item : restHighLevelClient.mget(multiGetRequest, RequestOptions.DEFAULT)) {
+                if (item.isFailed()) {
+                    log.error("读取文档失败,index:{},id:{}", index, item.getId(), item.getFailure().getFailure());
+                    readFailures.put(item.getId(), new BulkItemResponse.Failure(index, item.getType(), item.getId(), item.getFailure().getFailure()));
+                    continue;
+                }
+                GetResponse current = item.getResponse();
+                Object document = merge.apply(item.getId(), current.isExists() ? ElasticSearchHitMapper.toBean(item.getId(), current.getSourceAsString(), var1) : null);
+                if (null == document) {
+                    continue;
+                }
+                IndexRequest indexRequest = this.indexRequest(document, index, item.getId());
+                if (current.isExists()) {
+                    indexRequest.setIfSeqNo(current.getSeqNo()).setIfPrimaryTerm(current.getPrimaryTerm());
+                } else {
+                    // 文档不存在时以 create 方式写入,并发创建同一文档同样会得到版本冲突
+                    indexRequest.opType(DocWriteRequest.OpType.CREATE);
+                }
+                requests.add(indexRequest);
+            }
+            multiGetRequest = new MultiGetRequest();
+        }
+        return requests;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据id更新或创建(文档)", des = "入参 Object、id,返回boolean")
+    public boolean upsertDocument(Object var2, String index, String id) throws IOException {
+        UpdateRequest updateRequest = new UpdateRequest(index, id);
+        ElasticSearchSourceUtil.doc(updateRequest, var2).docAsUpsert(true);
+        return null != this.upsert(updateRequest);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据id更新或创建(文档)", des = "入参 Object、id,返回T")
+    public T upsertDocument(Class<T> var1, Object var2, String index, String id) throws IOException {
+        UpdateRequest updateRequest = new UpdateRequest(index, id);
+        ElasticSearchSourceUtil.doc(updateRequest, var2).docAsUpsert(true).fetchSource(true);
+        return this.toBean(var1, this.upsert(updateRequest));
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据 ScriptDto 更新或创建(文档)", des = "入参 ScriptDTO、Object、id,返回T")
+    public T upsertDocument(Class<T> var1, ScriptDTO scriptDto, Object upsert, String index, String id) throws IOException {
+        UpdateRequest updateRequest = new UpdateRequest(index, id);
+        updateRequest.script(elasticSearchScriptRegistry.toScript(scriptDto));
+        BytesRef ref = ElasticSearchSourceUtil.toBytes(upsert).toBytesRef();
+        updateRequest.upsert(ref.bytes, ref.offset, ref.length, XContentType.JSON).fetchSource(true);
+        return this.toBean(var1, this.upsert(updateRequest));
+    }
+
+    /**
+     * 执行 upsert, 更新(200)或创建(201)都视为成功
+     *
+     * @return UpdateResponse null 表示失败
+     */
+    private UpdateResponse upsert(UpdateRequest updateRequest) throws IOException {
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), updateRequest);
+        UpdateResponse update = this.update(updateRequest);
+        RestStatus status = update.status();
+        return RestStatus.OK.equals(status) || RestStatus.CREATED.equals(status) ? update : null;
+    }
+
+    /**
+     * 执行 update, 结束后移除文档缓存
+     */
+    private UpdateResponse update(UpdateRequest updateRequest) throws IOException {
+        try {
+            return restHighLevelClient.update(updateRequest, RequestOptions.DEFAULT);
+        } finally {
+            elasticSearchDocumentCache.invalidate(updateRequest);
+        }
+    }
+
+    /**
+     * 从 fetchSource 返回的 GetResult 中取出更新后的文档
+     */
+    private T toBean(Class<T> var1, UpdateResponse update) {
+        if (null == update || null == update.getGetResult() || update.getGetResult().isSourceEmpty()) {
+            return null;
+        }
+        return ElasticSearchHitMapper.toBean(update.getId(), update.getGetResult().sourceAsString(), var1);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据Map -> k组成的id进行批量更新或创建文档")
+    public boolean upsertBatchDocument(String index, Map<String, Object> params) throws IOException {
+        if (MapUtil.isEmpty(params)) {
+            throw new RuntimeException("ES进行批量操作时,入参Map不可以为空或size为0!");
+        }
+        return elasticSearchBulkExecutor.execute(this.upsertRequests(index, params, false)).isSuccess();
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据Map -> k组成的id进行批量更新或创建文档,并返回更新后的文档")
+    public Map<String, T> upsertBatchDocument(Class<T> var1, String index, Map<String, Object> params) throws IOException {
+        if (MapUtil.isEmpty(params)) {
+            throw new RuntimeException("ES进行批量操作时,入参Map不可以为空或size为0!");
+        }
+        // 子 bulk 并发执行,回调在 bulk 线程中
+        Map<String, T> documents = new ConcurrentHashMap<>(params.size());
+        ElasticSearchBulkResultDTO result = elasticSearchBulkExecutor.execute(this.upsertRequests(index, params, true), false, item -> {
+            T document = this.toBean(var1, item.getResponse());
+            if (null != document) {
+                documents.put(item.getId(), document);
+            }
         });
-        BulkResponse bulkResponse = restHighLevelClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-        RestStatus status = bulkResponse.status();
-        return RestStatus.OK.equals(status);
+        if (!result.isSuccess()) {
+            log.error("批量更新或创建文档存在失败,index:{},失败id:{}", index, result.getFailedItems().keySet());
+        }
+        return documents;
+    }
+
+    private Iterator<UpdateRequest> upsertRequests(String index, Map<String, Object> params, boolean fetchSource) {
+        return params.entrySet().stream().map(e -> {
+            UpdateRequest updateRequest = new UpdateRequest(index, e.getKey());
+            ElasticSearchSourceUtil.doc(updateRequest, e.getValue()).docAsUpsert(true).fetchSource(fetchSource);
+            return updateRequest;
+        }).iterator();
     }
 
     @Override
     @ExecutionMethod(name = "es-根据id查询(文档)", des = "入参 id")
     public T getDocument(Class<T> var1, String index, String id) throws IOException {
-        GetRequest getRequest = new GetRequest(index, id);
-        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), getRequest);
-        GetResponse documentFields = restHighLevelClient.get(getRequest, RequestOptions.DEFAULT);
-        return JSONUtil.toBean(documentFields.getSourceAsString(), var1);
+        return this.getDocument(var1, index, id, null);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据id查询(文档)", des = "入参 id、routing")
+    public T getDocument(Class<T> var1, String index, String id, String routing) throws IOException {
+        // 缓存键不包含 _routing, 自定义 routing 的读取不经过缓存
+        boolean cacheable = null == routing;
+        String source = cacheable ? elasticSearchDocumentCache.get(index, id) : null;
+        if (null != source) {
+            return ElasticSearchHitMapper.toBean(id, source, var1);
+        }
+        long sequence = elasticSearchDocumentCache.begin(index);
+        GetResponse documentFields;
+        if (elasticSearchProperties.getLoader().isEnabled()) {
+            // 与同一时间窗口内的其它读取合并为一次 _mget
+            documentFields = this.await(elasticSearchDocumentLoader.load(index, id, routing));
+        } else {
+            GetRequest getRequest = new GetRequest(index, id);
+            getRequest.routing(routing);
+            ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), getRequest);
+            documentFields = restHighLevelClient.get(getRequest, RequestOptions.DEFAULT);
+        }
+        if (cacheable && documentFields.isExists()) {
+            elasticSearchDocumentCache.put(index, id, documentFields.getSourceAsString(), sequence);
+        }
+        return ElasticSearchHitMapper.toBean(id, documentFields.getSourceAsString(), var1);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据ids批量查询(文档)", des = "入参 ids,返回Map<String, T>")
+    public Map<String, T> getDocuments(Class<T> var1, String index, Collection<String> ids) throws IOException {
+        long sequence = elasticSearchDocumentCache.begin(index);
+        // 已缓存的文档直接使用,其余的交给加载器合并读取
+        Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>(ids.size());
+        for (String id : ids) {
+            if (futures.containsKey(id)) {
+                continue;
+            }
+            String source = elasticSearchDocumentCache.get(index, id);
+            futures.put(id, null != source ? CompletableFuture.completedFuture(source) : elasticSearchDocumentLoader.load(index, id, null).thenApply(response -> {
+                if (!response.isExists()) {
+                    return null;
+                }
+                elasticSearchDocumentCache.put(index, id, response.getSourceAsString(), sequence);
+                return response.getSourceAsString();
+            }));
+        }
+        // 全部 id 已加入, 不再等待合并窗口
+        elasticSearchDocumentLoader.flush(index);
+        Map<String, T> documents = new LinkedHashMap<>(futures.size());
+        for (Map.Entry<String, CompletableFuture<String>> entry : futures.entrySet()) {
+            String source = this.await(entry.getValue());
+            if (null != source) {
+                documents.put(entry.getKey(), ElasticSearchHitMapper.toBean(entry.getKey(), source, var1));
+            }
+        }
+        return documents;
+    }
+
+    private <R> R await(CompletableFuture<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待 _mget 结果时被中断");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
     }
 
     @Override
@@ -293,35 +814,210 @@ public class ElasticSearchServiceImpl<T> implements ElasticSearchService<T> {
              当总量count <= 10000 ，采用 from-size 分页 {@link com.blacktea.es.service.strategy.FromSizePageStrategyImpl}
              当总量(count) > 10000 时,可以采用 scroll 深分页 与 search_after 深分页,
                当前默认使用的时 scroll 分页 {@link com.blacktea.es.service.strategy.ScrollPageStrategyImpl}
+               可以通过 elasticsearch.search.deep-page-strategy=pit 改为 point in time 分页 {@link com.xh.es.service.strategy.PitPageStrategyImpl}
          */
 
         SearchRequest searchRequest = new SearchRequest(index);
         SearchSourceBuilder searchSourceBuilder = ElasticSearchUtil.conditionCombination(searchDto);
+        // 不再单独 count: 第一页的 total hits 用于选择分页方式,只需要知道是否超过 from-size 的上限
+        searchSourceBuilder.trackTotalHitsUpTo(ElasticSearchConst.MAX_FROMSIZE_COUNT);
         searchRequest.source(searchSourceBuilder);
-        QueryBuilder query = searchSourceBuilder.query();
-        long count = this.count(index, query);
-        int limit;
-        if (count <= ElasticSearchConst.ZERO) {
-            return new ArrayList<>();
-        } else {
-            if (count <= ElasticSearchConst.MAX_FROMSIZE_COUNT) {
-                RequestFromSizePage requestFromSizePage = new RequestFromSizePage();
-                requestFromSizePage.setPage(0);
-                limit = Math.toIntExact(count);
-                requestFromSizePage.setLimit(limit);
-                List<T> list = this.list(var1, requestFromSizePage, searchRequest);
-                return list;
-            } else {
-                // 使用其他方法来查询
-                RequestScrollPage requestScrollPage = new RequestScrollPage();
-                requestScrollPage.setPage(0);
-                limit = ElasticSearchConst.SCROLL_LIMIT;
-                requestScrollPage.setLimit(limit);
-                requestScrollPage.setScrollTimeValue(TimeValue.timeValueMinutes(2));
-                List<T> list = this.list(var1, requestScrollPage, searchRequest);
-                return list;
+        PageRequest firstPage = RequestFromSizePage.of(0, ElasticSearchConst.SCROLL_LIMIT);
+        PageRequest deepPageRequest = this.deepPageRequest();
+        if (deepPageRequest instanceof RequestPitPage) {
+            // 第一页使用 from-size, 超过上限时 PIT 从 from=SCROLL_LIMIT 开始继续,第一页不会被丢弃
+            Hits first = this.fromSizeHits(firstPage, searchRequest);
+            List<T> list = this.firstPageList(var1, first, searchRequest);
+            if (!first.isExact()) {
+                searchSourceBuilder.from(0);
+                ((RequestPitPage) deepPageRequest).setFrom(ElasticSearchConst.SCROLL_LIMIT);
+                list.addAll(this.list(var1, deepPageRequest, searchRequest));
+            }
+            return list;
+        }
+        // 第一页同时打开 scroll: 未超过上限时清除 scroll, 超过上限时从第一页继续 scroll;
+        // 开启查询缓存时只缓存(也只使用)总数精确的第一页,总数不精确时一定要打开 scroll
+        AtomicReference<SearchResponse> opened = new AtomicReference<>();
+        Hits first = this.cachedHits(firstPage, searchRequest, () -> {
+            opened.set(scrollPageStrategy.open(searchRequest, deepPageRequest));
+            return opened.get();
+        }, Hits::isExact);
+        SearchResponse response = opened.get();
+        if (first.isExact()) {
+            if (null != response) {
+                scrollPageStrategy.clear(response.getScrollId());
             }
+            searchRequest.scroll((Scroll) null);
+            return this.firstPageList(var1, first, searchRequest);
         }
+        List<T> list = new ArrayList<>();
+        try (CloseableIterator<T> iterator = scrollPageStrategy.iterator(response, deepPageRequest, hit -> ElasticSearchHitMapper.toBean(hit, var1, false))) {
+            iterator.forEachRemaining(list::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return list;
+    }
+
+    /**
+     * 第一页的结果, 总数精确且超过一页时再用 from-size 取回剩余的部分(from=SCROLL_LIMIT)
+     */
+    private List<T> firstPageList(Class<T> var1, Hits first, SearchRequest searchRequest) throws IOException {
+        List<T> list = first.toList(var1);
+        if (first.isExact() && first.getTotal() > ElasticSearchConst.SCROLL_LIMIT) {
+            int remaining = Math.toIntExact(first.getTotal()) - ElasticSearchConst.SCROLL_LIMIT;
+            list.addAll(this.fromSizeHits(RequestFromSizePage.of(ElasticSearchConst.SCROLL_LIMIT, remaining), searchRequest).toList(var1));
+        }
+        return list;
+    }
+
+    /**
+     * 深分页的分页对象, 按 elasticsearch.search.deep-page-strategy 选择 scroll 或 PIT
+     */
+    private PageRequest deepPageRequest() {
+        ElasticSearchProperties.Search search = elasticSearchProperties.getSearch();
+        TimeValue keepAlive = TimeValue.timeValueMinutes(search.getDeepPageKeepAliveMinutes());
+        if ("pit".equalsIgnoreCase(search.getDeepPageStrategy())) {
+            return RequestPitPage.of(ElasticSearchConst.SCROLL_LIMIT, keepAlive);
+        }
+        return RequestScrollPage.of(ElasticSearchConst.SCROLL_LIMIT, keepAlive);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据条件逐页查询(stream)", des = "入参 ESSearchDto对象,scroll/pit")
+    public Stream<T> getStreamByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto) throws IOException {
+        return StreamUtils.createStreamFromIterator(this.getIteratorByCondition(var1, index, searchDto, this.deepPageRequest()));
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据条件逐页查询(iterator)", des = "入参 ESSearchDto对象,scroll/search_after/pit")
+    public CloseableIterator<T> getIteratorByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto, PageRequest pageRequest) throws IOException {
+        SearchRequest searchRequest = new SearchRequest(index);
+        searchRequest.source(ElasticSearchUtil.conditionCombination(searchDto));
+        if (pageRequest instanceof RequestScrollPage) {
+            return scrollPageStrategy.iterator(var1, searchRequest, pageRequest);
+        } else if (pageRequest instanceof RequestSearchAfterPage) {
+            return searchAfterPageStrategy.iterator(var1, searchRequest, pageRequest);
+        } else if (pageRequest instanceof RequestPitPage) {
+            return pitPageStrategy.iterator(var1, searchRequest, pageRequest);
+        }
+        throw new RuntimeException("ES逐页查询时,分页对象只能是 RequestScrollPage、RequestSearchAfterPage 或 RequestPitPage!");
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据条件查询id", des = "入参 ESSearchDto对象,不返回_source,scroll")
+    public List<String> getIdsByCondition(String index, ElasticSearchSearchDTO searchDto) throws IOException {
+        return this.getIdsByCondition(index, searchDto, this.sweepPageRequest());
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据条件查询id", des = "入参 ESSearchDto对象,不返回_source,scroll/search_after")
+    public List<String> getIdsByCondition(String index, ElasticSearchSearchDTO searchDto, PageRequest pageRequest) throws IOException {
+        SearchRequest searchRequest = this.sweepRequest(index, searchDto, pageRequest);
+        searchRequest.source().fetchSource(false);
+        List<String> ids = new ArrayList<>();
+        try (CloseableIterator<String> iterator = this.sweepStrategy(pageRequest).iterator(searchRequest, pageRequest, SearchHit::getId)) {
+            iterator.forEachRemaining(ids::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return ids;
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据条件查询数值字段(long[])", des = "入参 ESSearchDto对象,docvalue_fields,scroll")
+    public long[] getLongValuesByCondition(String index, ElasticSearchSearchDTO searchDto, String field) throws IOException {
+        return this.getLongValuesByCondition(index, searchDto, field, this.sweepPageRequest());
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据条件查询数值字段(long[])", des = "入参 ESSearchDto对象,docvalue_fields,scroll/search_after")
+    public long[] getLongValuesByCondition(String index, ElasticSearchSearchDTO searchDto, String field, PageRequest pageRequest) throws IOException {
+        SearchRequest searchRequest = this.sweepRequest(index, searchDto, pageRequest);
+        // 只读取 doc values, _source、_id 等都不返回; 条件中指定了 _source 字段时 stored_fields 不能为 _none_, 先关闭 _source
+        searchRequest.source().fetchSource(false).storedField(StoredFieldsContext._NONE_).docValueField(field);
+        long[] values = new long[Math.max(pageRequest.getLimit(), 16)];
+        int size = 0;
+        try (CloseableIterator<DocumentField> iterator = this.sweepStrategy(pageRequest).iterator(searchRequest, pageRequest, hit -> hit.field(field))) {
+            while (iterator.hasNext()) {
+                DocumentField documentField = iterator.next();
+                if (null == documentField) {
+                    continue;
+                }
+                for (Object value : documentField.getValues()) {
+                    if (size == values.length) {
+                        values = Arrays.copyOf(values, size * 2);
+                    }
+                    values[size++] = this.longValue(field, value);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * doc value 转为 long: 整数字段为 Number, 其他类型(日期、keyword 等)给出明确的错误而不是 ClassCastException
+     */
+    private long longValue(String field, Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("ES字段[" + field + "]的 doc value [" + value + "] 不是整数,只支持整数类型的字段!", e);
+            }
+        }
+        throw new RuntimeException("ES字段[" + field + "]的 doc value 类型为 " + value.getClass().getName() + ",只支持整数类型的字段!");
+    }
+
+    /**
+     * 只取 _id 或 doc values 时的默认分页: scroll
+     */
+    private RequestScrollPage sweepPageRequest() {
+        return RequestScrollPage.of(ElasticSearchConst.SCROLL_LIMIT, TimeValue.timeValueMinutes(elasticSearchProperties.getSearch().getDeepPageKeepAliveMinutes()));
+    }
+
+    /**
+     * 只取 _id 或 doc values 的查询: scroll 没有指定排序时按 _doc 排序(不计算评分,最省资源);
+     * search_after 不需要总数
+     */
+    private SearchRequest sweepRequest(String index, ElasticSearchSearchDTO searchDto, PageRequest pageRequest) {
+        SearchSourceBuilder searchSourceBuilder = ElasticSearchUtil.conditionCombination(searchDto);
+        if (pageRequest instanceof RequestScrollPage && CollectionUtils.isEmpty(searchSourceBuilder.sorts())) {
+            searchSourceBuilder.sort(FieldSortBuilder.DOC_FIELD_NAME);
+        } else if (pageRequest instanceof RequestSearchAfterPage) {
+            searchSourceBuilder.trackTotalHits(false);
+        }
+        return new SearchRequest(index).source(searchSourceBuilder);
+    }
+
+    private HitIterablePageStrategy<T> sweepStrategy(PageRequest pageRequest) {
+        if (pageRequest instanceof RequestScrollPage) {
+            return scrollPageStrategy;
+        } else if (pageRequest instanceof RequestSearchAfterPage) {
+            return searchAfterPageStrategy;
+        }
+        throw new RuntimeException("ES只查询_id或doc values时,分页对象只能是 RequestScrollPage 或 RequestSearchAfterPage!");
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据条件并行导出(sliced scroll)", des = "入参 ESSearchDto对象、Consumer")
+    public long exportByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto, Consumer<? super T> consumer) throws IOException {
+        SearchRequest searchRequest = new SearchRequest(index);
+        searchRequest.source(ElasticSearchUtil.conditionCombination(searchDto));
+        return scrollSliceExporter.export(var1, searchRequest, consumer);
+    }
+
+    @Override
+    @ExecutionMethod(name = "es-根据条件并行导出(stream)", des = "入参 ESSearchDto对象,sliced scroll")
+    public Stream<T> getParallelStreamByCondition(Class<T> var1, String index, ElasticSearchSearchDTO searchDto) throws IOException {
+        SearchRequest searchRequest = new SearchRequest(index);
+        searchRequest.source(ElasticSearchUtil.conditionCombination(searchDto));
+        return scrollSliceExporter.stream(var1, searchRequest);
     }
 
     /**
@@ -341,31 +1037,161 @@ public class ElasticSearchServiceImpl<T> implements ElasticSearchService<T> {
 
         if (pageRequest instanceof RequestFromSizePage) {
             // 查询指定分页
-            list = new RequestPageContext<>(fromSizePageStrategy).list(var1, searchRequest, pageRequest);
+            list = this.fromSizeHits(pageRequest, searchRequest).toList(var1);
         } else if (pageRequest instanceof RequestScrollPage) {
             // 查询全部数据
             list = new RequestPageContext<>(scrollPageStrategy).list(var1, searchRequest, pageRequest);
         } else if (pageRequest instanceof RequestSearchAfterPage) {
             // 一页一页查询
             list = new RequestPageContext<>(searchAfterPageStrategy).list(var1, searchRequest, pageRequest);
+        } else if (pageRequest instanceof RequestPitPage) {
+            // 基于 point in time 查询全部数据
+            list = new RequestPageContext<>(pitPageStrategy).list(var1, searchRequest, pageRequest);
         }
         return list;
 
     }
 
+    /**
+     * from-size 查询, 命中总数随同一次请求通过 track_total_hits 返回
+     */
+    private Hits fromSizeHits(PageRequest pageRequest, SearchRequest searchRequest) throws IOException {
+        return this.cachedHits(pageRequest, searchRequest, () -> fromSizePageStrategy.search(searchRequest, pageRequest), hits -> true);
+    }
+
+    /**
+     * 查询一页, 开启查询缓存时缓存 命中总数 + 每个 hit 的 _id 和 _source,命中时不再请求 ES
+     * 只缓存单个索引的查询,多个索引时无法按索引失效; cacheable 不满足的结果不放入缓存,缓存中的也不使用
+     */
+    private Hits cachedHits(PageRequest pageRequest, SearchRequest searchRequest, CheckedSupplier<SearchResponse, IOException> search,
+                            Predicate<Hits> cacheable) throws IOException {
+        boolean enabled = elasticSearchQueryCache.isEnabled() && searchRequest.indices().length == 1;
+        String index = enabled ? searchRequest.indices()[0] : null;
+        String key = null;
+        long generation = 0;
+        if (enabled) {
+            key = elasticSearchQueryCache.key(index, searchRequest.source(), "search", pageRequest.getPage(), pageRequest.getLimit());
+            String cached = elasticSearchQueryCache.get(index, key);
+            if (null != cached) {
+                Hits hits = Hits.parse(cached);
+                if (cacheable.test(hits)) {
+                    return hits;
+                }
+            }
+            generation = elasticSearchQueryCache.generation(index);
+        }
+        SearchResponse searchResponse = search.get();
+        Hits hits = new Hits(searchResponse.getHits());
+        if (enabled && cacheable.test(hits)) {
+            elasticSearchQueryCache.put(index, key, hits.encode(), generation);
+        }
+        return hits;
+    }
+
+    /**
+     * 按配置设置 track_total_hits: true 精确统计, 数字表示最多精确统计到该值
+     */
+    private void trackTotalHits(SearchSourceBuilder searchSourceBuilder) {
+        String trackTotalHits = elasticSearchProperties.getSearch().getTrackTotalHits();
+        if (Boolean.TRUE.toString().equalsIgnoreCase(trackTotalHits)) {
+            searchSourceBuilder.trackTotalHits(true);
+        } else {
+            searchSourceBuilder.trackTotalHitsUpTo(Integer.parseInt(trackTotalHits));
+        }
+    }
+
+    /**
+     * 一页结果: 命中总数 + hits
+     * 查询得到时直接转换 SearchHits; 放入查询缓存时编码为 {"total","exact","hits":[{"_id","_source"}]},
+     * 命中缓存时每个 _source 单独反序列化,与查询得到时使用同一个 {@link ElasticSearchHitMapper}
+     */
+    private static class Hits {
+
+        private final long total;
+        private final boolean exact;
+        private final SearchHits searchHits;
+        private final JsonNode cached;
+
+        Hits(SearchHits searchHits) {
+            TotalHits totalHits = searchHits.getTotalHits();
+            this.total = total(totalHits);
+            this.exact = null != totalHits && TotalHits.Relation.EQUAL_TO.equals(totalHits.relation);
+            this.searchHits = searchHits;
+            this.cached = null;
+        }
+
+        private Hits(JsonNode cached) {
+            this.total = cached.path("total").asLong();
+            this.exact = cached.path("exact").asBoolean();
+            this.searchHits = null;
+            this.cached = cached.path("hits");
+        }
+
+        /**
+         * 命中总数, 按阈值统计且超出时为阈值(下限)
+         */
+        static long total(TotalHits totalHits) {
+            return null == totalHits ? -1 : totalHits.value;
+        }
+
+        static Hits parse(String value) throws IOException {
+            return new Hits(ElasticSearchSourceUtil.MAPPER.readTree(value));
+        }
+
+        long getTotal() {
+            return total;
+        }
+
+        boolean isExact() {
+            return exact;
+        }
+
+        <T> List<T> toList(Class<T> var1) {
+            if (null != searchHits) {
+                return ElasticSearchHitMapper.toList(searchHits, var1, false);
+            }
+            List<T> list = new ArrayList<>(cached.size());
+            cached.forEach(hit -> list.add(ElasticSearchHitMapper.toBean(hit.path("_id").asText(null), hit.path("_source").asText(null), var1)));
+            return list;
+        }
+
+        String encode() {
+            ObjectNode node = ElasticSearchSourceUtil.MAPPER.createObjectNode().put("total", total).put("exact", exact);
+            ArrayNode hits = node.putArray("hits");
+            for (SearchHit hit : searchHits.getHits()) {
+                hits.addObject().put("_id", hit.getId()).put("_source", hit.hasSource() ? hit.getSourceAsString() : null);
+            }
+            return node.toString();
+        }
+    }
+
     @Override
     @ExecutionMethod(name = "es-根据条件分页查询(page)")
     public Page<T> getPageByCondition(Class<T> var1, String index, ElasticSearchSearchDTO esSearchDto, PageRequest pageRequest) throws IOException {
+        if (null == pageRequest) {
+            throw new RuntimeException("ES查询分页时,分页对象不可以为空!");
+        }
         SearchRequest searchRequest = new SearchRequest(index);
         SearchSourceBuilder searchSourceBuilder = ElasticSearchUtil.conditionCombination(esSearchDto);
+        // 总数随本页的查询一起返回,不再单独 count
+        this.trackTotalHits(searchSourceBuilder);
         searchRequest.source(searchSourceBuilder);
-        List<T> list = this.list(var1, pageRequest, searchRequest);
-        if (CollectionUtils.isEmpty(list)) {
-            list = new ArrayList<>();
+        List<T> list;
+        long count;
+        if (pageRequest instanceof RequestFromSizePage) {
+            Hits hits = this.fromSizeHits(pageRequest, searchRequest);
+            list = hits.toList(var1);
+            count = hits.getTotal();
+        } else if (pageRequest instanceof RequestSearchAfterPage) {
+            SearchResponse searchResponse = searchAfterPageStrategy.search(searchRequest, pageRequest);
+            list = ElasticSearchUtil.searchResponseToList(searchResponse, var1, true);
+            count = Hits.total(searchResponse.getHits().getTotalHits());
+        } else {
+            // scroll 返回全部结果,数量即为总数
+            list = this.list(var1, pageRequest, searchRequest);
+            count = list.size();
         }
         Pageable pageable = org.springframework.data.domain.PageRequest.of(pageRequest.getPage(), pageRequest.getLimit());
-        SearchSourceBuilder source = searchRequest.source();
-        long count = this.count(index, source.query());
         return new PageImpl<>(list, pageable, count);
     }
 
@@ -378,6 +1204,16 @@ public class ElasticSearchServiceImpl<T> implements ElasticSearchService<T> {
     @Override
     @ExecutionMethod(name = "es-根据条件统计(count)")
     public Long count(String index, QueryBuilder query) throws IOException {
+        String key = null;
+        long generation = 0;
+        if (elasticSearchQueryCache.isEnabled() && null != query && !index.contains(",")) {
+            key = elasticSearchQueryCache.key(index, query, "count");
+            String cached = elasticSearchQueryCache.get(index, key);
+            if (null != cached) {
+                return Long.parseLong(cached);
+            }
+            generation = elasticSearchQueryCache.generation(index);
+        }
         ElasticSearchConst.ESLogLevelEnum byLevel = ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel());
         CountRequest countRequest = new CountRequest(index);
         countRequest.query(query);
@@ -385,6 +1221,9 @@ public class ElasticSearchServiceImpl<T> implements ElasticSearchService<T> {
         CountResponse countResponse = restHighLevelClient.count(countRequest, RequestOptions.DEFAULT);
         long count = countResponse.getCount();
         log.info("count -> 本文档符合的内容共{}条!", count);
+        if (null != key) {
+            elasticSearchQueryCache.put(index, key, String.valueOf(count), generation);
+        }
         return count;
     }
 
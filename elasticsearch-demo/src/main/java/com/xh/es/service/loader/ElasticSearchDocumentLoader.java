@@ -0,0 +1,206 @@
+package com.xh.es.service.loader;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.xh.es.common.constant.ElasticSearchConst;
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 id 读取文档的批量加载器(DataLoader)
+ * 一个时间窗口内(或达到数量上限前)并发到达的读取请求,按索引合并为一次 _mget,
+ * 返回后再逐个完成各自的 CompletableFuture;同一窗口内重复的 id 只读取一次
+ * <p>
+ * 适用于请求处理中循环调用 getDocument 的场景,20~200 次 GET 合并为少量 _mget;
+ * 每次读取最多多等待一个窗口(elasticsearch.loader.window-millis), 默认关闭, 并发读取多的场景再开启
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component
+public class ElasticSearchDocumentLoader {
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ElasticSearchProperties elasticSearchProperties;
+    private final ElasticSearchProperties.Loader loader;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 索引 -> 当前窗口中等待合并的读取
+     */
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    public ElasticSearchDocumentLoader(RestHighLevelClient restHighLevelClient, ElasticSearchProperties elasticSearchProperties) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.elasticSearchProperties = elasticSearchProperties;
+        this.loader = elasticSearchProperties.getLoader();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("es-loader-", true));
+    }
+
+    /**
+     * 读取文档,在当前窗口结束或数量达到上限时与其它读取一起提交
+     *
+     * @param index   索引
+     * @param id      id
+     * @param routing _routing, 可以为 null
+     * @return CompletableFuture 文档不存在时 GetResponse.isExists() 为 false
+     */
+    public CompletableFuture<GetResponse> load(String index, String id, String routing) {
+        CompletableFuture<GetResponse> future = new CompletableFuture<>();
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = batches.get(index);
+            if (null == batch) {
+                batch = new Batch(index);
+                batches.put(index, batch);
+                Batch scheduled = batch;
+                scheduler.schedule(() -> this.dispatch(scheduled), loader.getWindowMillis(), TimeUnit.MILLISECONDS);
+            }
+            batch.add(id, routing, future);
+            if (batch.size() >= loader.getMaxBatchSize()) {
+                batches.remove(index);
+                full = batch;
+            }
+        }
+        if (null != full) {
+            this.send(full);
+        }
+        return future;
+    }
+
+    /**
+     * 不等窗口结束, 立即提交索引当前等待合并的读取(例如 getDocuments 已经加入了全部 id)
+     *
+     * @param index 索引
+     */
+    public void flush(String index) {
+        Batch batch;
+        synchronized (this) {
+            batch = batches.remove(index);
+        }
+        if (null != batch) {
+            this.send(batch);
+        }
+    }
+
+    /**
+     * 窗口结束,提交仍未提交的批次(已因数量达到上限提交的批次会被跳过)
+     */
+    private void dispatch(Batch batch) {
+        synchronized (this) {
+            if (batches.get(batch.index) != batch) {
+                return;
+            }
+            batches.remove(batch.index);
+        }
+        this.send(batch);
+    }
+
+    private void send(Batch batch) {
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        batch.futures.keySet().forEach(key -> multiGetRequest.add(new MultiGetRequest.Item(batch.index, key.id).routing(key.routing)));
+        log.debug("合并{}个读取请求为一次 _mget,index:{}", multiGetRequest.getItems().size(), batch.index);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), multiGetRequest);
+        try {
+            restHighLevelClient.mgetAsync(multiGetRequest, RequestOptions.DEFAULT, new ActionListener<MultiGetResponse>() {
+                @Override
+                public void onResponse(MultiGetResponse response) {
+                    MultiGetItemResponse[] items = response.getResponses();
+                    List<List<CompletableFuture<GetResponse>>> futures = new ArrayList<>(batch.futures.values());
+                    for (int i = 0; i < items.length; i++) {
+                        MultiGetItemResponse item = items[i];
+                        for (CompletableFuture<GetResponse> future : futures.get(i)) {
+                            if (item.isFailed()) {
+                                future.completeExceptionally(item.getFailure().getFailure());
+                            } else {
+                                future.complete(item.getResponse());
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    batch.futures.values().forEach(list -> list.forEach(future -> future.completeExceptionally(e)));
+                }
+            });
+        } catch (RuntimeException e) {
+            batch.futures.values().forEach(list -> list.forEach(future -> future.completeExceptionally(e)));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdown();
+    }
+
+    private static class Batch {
+
+        private final String index;
+        /**
+         * id+routing -> 等待该文档的 future, 按加入顺序排列,与 _mget 返回的顺序一致
+         */
+        private final Map<Key, List<CompletableFuture<GetResponse>>> futures = new LinkedHashMap<>();
+
+        Batch(String index) {
+            this.index = index;
+        }
+
+        void add(String id, String routing, CompletableFuture<GetResponse> future) {
+            futures.computeIfAbsent(new Key(id, routing), k -> new ArrayList<>()).add(future);
+        }
+
+        int size() {
+            return futures.size();
+        }
+    }
+
+    private static class Key {
+
+        private final String id;
+        private final String routing;
+
+        Key(String id, String routing) {
+            this.id = id;
+            this.routing = routing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return id.equals(key.id) && Objects.equals(routing, key.routing);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id.hashCode() + (null == routing ? 0 : routing.hashCode());
+        }
+    }
+}
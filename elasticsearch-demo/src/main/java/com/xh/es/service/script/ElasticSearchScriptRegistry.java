@@ -0,0 +1,172 @@
+package com.xh.es.service.script;
+
+import cn.hutool.crypto.SecureUtil;
+import com.xh.es.common.util.ElasticSearchSourceUtil;
+import com.xh.es.common.util.ElasticSearchUtil;
+import com.xh.es.model.dto.ScriptDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.cluster.storedscripts.PutStoredScriptRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 存储脚本(stored script)注册中心
+ * 按字段拼接 inline 脚本(ctx._source.x=params.x;...)时,每一种字段组合都是一个新脚本,ES 需要分别编译,
+ * 容易触发 script.max_compilations_rate 限制;这里预置少量通用的存储脚本,字段名和值都放在 params 中,
+ * 不论修改哪些字段都只编译一次
+ * <p>
+ * 1: {@link #SET_FIELDS} 把 params.fields 中的每个字段覆盖到 _source;
+ * 2: {@link #INCREMENT_FIELDS} 把 params.fields 中的每个数值累加到 _source(字段不存在时从0开始)
+ * <p>
+ * 存储脚本在第一次使用时安装到集群,同时统计使用过的不同脚本数量,便于发现仍在大量生成 inline 脚本的调用方
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component
+public class ElasticSearchScriptRegistry {
+
+    public static final String SET_FIELDS = "es-set-fields";
+    public static final String INCREMENT_FIELDS = "es-increment-fields";
+
+    private static final Map<String, String> SCRIPTS = new HashMap<>();
+
+    static {
+        SCRIPTS.put(SET_FIELDS, "for (entry in params.fields.entrySet()) { ctx._source[entry.getKey()] = entry.getValue(); }");
+        SCRIPTS.put(INCREMENT_FIELDS, "for (entry in params.fields.entrySet()) { def v = ctx._source[entry.getKey()]; "
+                + "ctx._source[entry.getKey()] = (v == null ? 0 : v) + entry.getValue(); }");
+    }
+
+    private final Set<String> installed = ConcurrentHashMap.newKeySet();
+    /**
+     * 脚本标识(存储脚本为 id,inline 脚本为源码的 md5) -> 使用次数
+     */
+    private final Map<String, LongAdder> usage = new ConcurrentHashMap<>();
+
+    private final RestHighLevelClient restHighLevelClient;
+
+    public ElasticSearchScriptRegistry(RestHighLevelClient restHighLevelClient) {
+        this.restHighLevelClient = restHighLevelClient;
+    }
+
+    /**
+     * 覆盖字段的脚本, 替代 {@link ElasticSearchUtil#scriptCombination(Object)}
+     *
+     * @param var2 修改后的内容, 为 null 的属性不修改
+     * @return Script
+     * @throws IOException 安装存储脚本失败
+     */
+    public Script setFields(Object var2) throws IOException {
+        return this.stored(SET_FIELDS, Collections.singletonMap("fields", ElasticSearchSourceUtil.toMap(var2)));
+    }
+
+    /**
+     * 累加字段的脚本
+     *
+     * @param fields 字段名 -> 增量
+     * @return Script
+     * @throws IOException 安装存储脚本失败
+     */
+    public Script incrementFields(Map<String, ? extends Number> fields) throws IOException {
+        return this.stored(INCREMENT_FIELDS, Collections.singletonMap("fields", fields));
+    }
+
+    /**
+     * 引用预置的存储脚本,未安装时先安装
+     *
+     * @param id     脚本id, {@link #SET_FIELDS} 或 {@link #INCREMENT_FIELDS}
+     * @param params 脚本参数
+     * @return Script
+     * @throws IOException 安装存储脚本失败
+     */
+    public Script stored(String id, Map<String, Object> params) throws IOException {
+        if (!SCRIPTS.containsKey(id)) {
+            throw new RuntimeException("未注册的存储脚本:" + id);
+        }
+        this.install(id);
+        this.record(id);
+        return new Script(ScriptType.STORED, null, id, params);
+    }
+
+    /**
+     * 将 ScriptDTO 转化为 Script,并统计使用的脚本
+     * ScriptDTO.type 为 STORED 时 script 表示存储脚本的id
+     *
+     * @param scriptDto 自定义的ScriptDto
+     * @return Script
+     * @throws IOException 安装存储脚本失败
+     */
+    public Script toScript(ScriptDTO scriptDto) throws IOException {
+        if (null != scriptDto && ScriptType.STORED.equals(scriptDto.getType())) {
+            if (SCRIPTS.containsKey(scriptDto.getScript())) {
+                this.install(scriptDto.getScript());
+            }
+            this.record(scriptDto.getScript());
+            return new Script(ScriptType.STORED, null, scriptDto.getScript(), scriptDto.getParams());
+        }
+        Script script = ElasticSearchUtil.toScript(scriptDto);
+        this.record(SecureUtil.md5(script.getIdOrCode()));
+        return script;
+    }
+
+    private void install(String id) throws IOException {
+        if (installed.contains(id)) {
+            return;
+        }
+        XContentBuilder builder = XContentFactory.jsonBuilder()
+                .startObject()
+                .startObject("script")
+                .field("lang", "painless")
+                .field("source", SCRIPTS.get(id))
+                .endObject()
+                .endObject();
+        PutStoredScriptRequest request = new PutStoredScriptRequest().id(id).content(BytesReference.bytes(builder), XContentType.JSON);
+        restHighLevelClient.putScript(request, RequestOptions.DEFAULT);
+        installed.add(id);
+        log.info("存储脚本[{}]安装完成", id);
+    }
+
+    private void record(String key) {
+        LongAdder counter = usage.computeIfAbsent(key, k -> {
+            log.debug("使用了新的脚本[{}],当前不同脚本数量:{}", k, usage.size() + 1);
+            return new LongAdder();
+        });
+        counter.increment();
+    }
+
+    /**
+     * 使用过的不同脚本数量, 存储脚本按 id 计算, inline 脚本按源码计算
+     *
+     * @return int
+     */
+    public int getDistinctScripts() {
+        return usage.size();
+    }
+
+    /**
+     * 每个脚本的使用次数
+     *
+     * @return Map 脚本标识(存储脚本为 id,inline 脚本为源码的 md5) -> 使用次数
+     */
+    public Map<String, Long> getUsage() {
+        Map<String, Long> result = new HashMap<>(usage.size());
+        usage.forEach((k, v) -> result.put(k, v.sum()));
+        return result;
+    }
+}
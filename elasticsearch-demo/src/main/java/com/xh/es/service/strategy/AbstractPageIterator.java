@@ -0,0 +1,95 @@
+package com.xh.es.service.strategy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.util.CloseableIterator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 逐页查询的迭代器
+ * 当前页遍历完后才查询下一页,同一时刻只持有一页结果;
+ * 没有下一页、查询出现异常或调用 close 时释放服务端资源,释放只执行一次
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+abstract class AbstractPageIterator<T> implements CloseableIterator<T> {
+
+    private Iterator<T> page = Collections.emptyIterator();
+    private boolean exhausted;
+    private boolean released;
+
+    /**
+     * 查询下一页
+     *
+     * @return 下一页的结果, 为空表示没有更多结果
+     * @throws IOException 异常
+     */
+    protected abstract List<T> fetch() throws IOException;
+
+    /**
+     * 释放服务端资源, 不需要释放时不用实现
+     *
+     * @throws IOException 异常
+     */
+    protected void release() throws IOException {
+    }
+
+    /**
+     * fetch 中确认当前页已是最后一页时调用,不再查询下一页并立即释放服务端资源
+     */
+    protected void exhausted() {
+        exhausted = true;
+        if (released) {
+            return;
+        }
+        released = true;
+        try {
+            this.release();
+        } catch (IOException | RuntimeException e) {
+            log.error("逐页查询释放服务端资源失败", e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext() && !exhausted) {
+            List<T> next;
+            try {
+                next = this.fetch();
+            } catch (IOException e) {
+                this.close();
+                throw new UncheckedIOException("ES逐页查询失败", e);
+            } catch (RuntimeException e) {
+                this.close();
+                throw e;
+            }
+            if (next.isEmpty()) {
+                this.exhausted();
+            } else {
+                page = next.iterator();
+            }
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public void close() {
+        page = Collections.emptyIterator();
+        this.exhausted();
+    }
+}
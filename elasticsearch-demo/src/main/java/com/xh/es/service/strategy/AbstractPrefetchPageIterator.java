@@ -0,0 +1,204 @@
+package com.xh.es.service.strategy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.springframework.data.util.CloseableIterator;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * 预取下一页的逐页查询迭代器
+ * 调用方转换、处理当前页的同时,下一页的请求已经异步(searchAsync/scrollAsync)发出,网络等待与反序列化重叠
+ * <p>
+ * 1: 已返回未消费的页与正在请求的页合计不超过 depth, 内存中最多有 depth + 1 页结果(含正在转换的一页);
+ * 2: 异步回调在客户端的 IO 线程中执行,只记录结果并发出下一页的请求,hit 的转换在调用方线程中进行;
+ * 3: 没有下一页、查询出现异常或调用 close 时释放服务端资源,有请求未返回时等其返回后再释放(使用最新的 scrollId),释放只执行一次
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+abstract class AbstractPrefetchPageIterator<R> implements CloseableIterator<R> {
+
+    private final int depth;
+    private final Function<SearchHit, R> hitMapper;
+    /**
+     * 已返回未消费的页
+     */
+    private final ArrayDeque<SearchHit[]> pages = new ArrayDeque<>();
+    private final ActionListener<SearchResponse> listener = new ActionListener<SearchResponse>() {
+        @Override
+        public void onResponse(SearchResponse response) {
+            boolean release;
+            synchronized (AbstractPrefetchPageIterator.this) {
+                inFlight = false;
+                try {
+                    last = !advance(response);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                SearchHit[] hits = response.getHits().getHits();
+                if (!closed && null == error && hits.length > 0) {
+                    pages.add(hits);
+                }
+                release = closed || last || null != error;
+                AbstractPrefetchPageIterator.this.notifyAll();
+                if (!release) {
+                    fill();
+                }
+            }
+            if (release) {
+                releaseOnce();
+            }
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            synchronized (AbstractPrefetchPageIterator.this) {
+                inFlight = false;
+                error = e;
+                AbstractPrefetchPageIterator.this.notifyAll();
+            }
+            releaseOnce();
+        }
+    };
+
+    /**
+     * 当前页, 只在调用方线程中访问
+     */
+    private Iterator<R> page = Collections.emptyIterator();
+    private boolean inFlight;
+    private boolean last;
+    private boolean closed;
+    private boolean released;
+    private Exception error;
+
+    AbstractPrefetchPageIterator(int depth, Function<SearchHit, R> hitMapper) {
+        this.depth = Math.max(depth, 1);
+        this.hitMapper = hitMapper;
+    }
+
+    /**
+     * 按当前的翻页状态异步查询下一页, 不能阻塞
+     *
+     * @param listener 查询结果回调
+     */
+    protected abstract void request(ActionListener<SearchResponse> listener);
+
+    /**
+     * 查询结果返回后更新翻页状态(scrollId、search_after 的 values),在 IO 线程中执行
+     *
+     * @param response 查询结果
+     * @return 是否还有下一页
+     */
+    protected abstract boolean advance(SearchResponse response);
+
+    /**
+     * 释放服务端资源, 不能阻塞(可能在 IO 线程中执行),不需要释放时不用实现
+     */
+    protected void release() {
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            SearchHit[] hits;
+            synchronized (this) {
+                this.fill();
+                while (pages.isEmpty() && null == error && !last && !closed) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        this.close();
+                        throw new UncheckedIOException(new InterruptedIOException("等待下一页查询结果时被中断"));
+                    }
+                }
+                if (null != error) {
+                    Exception e = error;
+                    this.close();
+                    if (e instanceof RuntimeException) {
+                        throw (RuntimeException) e;
+                    }
+                    throw new UncheckedIOException("ES逐页查询失败", e instanceof IOException ? (IOException) e : new IOException(e));
+                }
+                if (pages.isEmpty()) {
+                    return false;
+                }
+                hits = pages.poll();
+                // 空出了位置, 转换当前页之前先发出下一页的请求
+                this.fill();
+            }
+            List<R> list = new ArrayList<>(hits.length);
+            for (SearchHit hit : hits) {
+                list.add(hitMapper.apply(hit));
+            }
+            page = list.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public R next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public void close() {
+        boolean release;
+        synchronized (this) {
+            closed = true;
+            pages.clear();
+            this.notifyAll();
+            release = !inFlight;
+        }
+        page = Collections.emptyIterator();
+        if (release) {
+            this.releaseOnce();
+        }
+    }
+
+    /**
+     * 未结束、没有请求中的页且未超过预取深度时发出下一页的请求
+     */
+    private synchronized void fill() {
+        if (closed || last || inFlight || null != error || pages.size() >= depth) {
+            return;
+        }
+        inFlight = true;
+        try {
+            this.request(listener);
+        } catch (RuntimeException e) {
+            inFlight = false;
+            error = e;
+        }
+    }
+
+    private void releaseOnce() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+        }
+        try {
+            this.release();
+        } catch (RuntimeException e) {
+            log.error("逐页查询释放服务端资源失败", e);
+        }
+    }
+}
@@ -6,8 +6,10 @@ import com.xh.es.common.util.ElasticSearchUtil;
 import com.xh.es.model.dto.PageRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
@@ -25,18 +27,33 @@ import java.util.List;
 @Service("fromSizePageStrategy")
 @RequiredArgsConstructor
 @Slf4j
-public class FromSizePageStrategyImpl<T> implements ElasticSearchRequestPageStrategy<T> {
+public class FromSizePageStrategyImpl<T> implements RawSearchPageStrategy<T> {
 
     private final RestHighLevelClient restHighLevelClient;
-    private ElasticSearchProperties elasticSearchProperties;
+    private final ElasticSearchProperties elasticSearchProperties;
 
     @Override
     public List<T> list(Class<T> var1, SearchRequest searchRequest, PageRequest pageRequest) throws IOException {
+        SearchResponse searchResponse = this.search(searchRequest, pageRequest);
+        return ElasticSearchUtil.searchResponseToList(searchResponse, var1);
+    }
+
+    @Override
+    public SearchResponse search(SearchRequest searchRequest, PageRequest pageRequest) throws IOException {
+        this.prepare(searchRequest, pageRequest);
+        return restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
+    }
+
+    @Override
+    public Cancellable searchAsync(SearchRequest searchRequest, PageRequest pageRequest, ActionListener<SearchResponse> listener) {
+        this.prepare(searchRequest, pageRequest);
+        return restHighLevelClient.searchAsync(searchRequest, RequestOptions.DEFAULT, listener);
+    }
+
+    private void prepare(SearchRequest searchRequest, PageRequest pageRequest) {
         SearchSourceBuilder searchSourceBuilder = searchRequest.source();
         searchSourceBuilder.from(pageRequest.getPage());
         searchSourceBuilder.size(pageRequest.getLimit());
         ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), searchRequest);
-        SearchResponse searchResponse = restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
-        return ElasticSearchUtil.searchResponseToList(searchResponse, var1);
     }
 }
@@ -0,0 +1,28 @@
+package com.xh.es.service.strategy;
+
+import com.xh.es.model.dto.PageRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.search.SearchHit;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.function.Function;
+
+/**
+ * 逐页查询时可以自定义 hit 转换的分页策略(scroll、search_after)
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+public interface HitIterablePageStrategy<T> extends IterablePageStrategy<T> {
+
+    /**
+     * 逐页查询, 每个 hit 由 hitMapper 转换,用于不返回 _source(只取 _id 或 docvalue_fields)的查询
+     *
+     * @param searchRequest 搜索请求对象
+     * @param pageRequest   分页请求对象, limit 为每页的数量
+     * @param hitMapper     hit 的转换方法
+     * @param <R>           转换后的类型
+     * @return CloseableIterator 需要在使用完后关闭
+     */
+    <R> CloseableIterator<R> iterator(SearchRequest searchRequest, PageRequest pageRequest, Function<SearchHit, R> hitMapper);
+}
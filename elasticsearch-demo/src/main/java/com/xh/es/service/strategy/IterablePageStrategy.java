@@ -0,0 +1,25 @@
+package com.xh.es.service.strategy;
+
+import com.xh.es.model.dto.PageRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.springframework.data.util.CloseableIterator;
+
+/**
+ * 可以按需逐页查询的分页策略(scroll、search_after、PIT)
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+public interface IterablePageStrategy<T> extends ElasticSearchRequestPageStrategy<T> {
+
+    /**
+     * 按需逐页查询,同一时刻内存中只有当前一页的结果,用于结果集很大、无法一次放入 List 的场景
+     * 遍历结束、出现异常或调用 close 时释放服务端资源(scroll 上下文、PIT)
+     *
+     * @param var1          返回的实体
+     * @param searchRequest 搜索请求对象
+     * @param pageRequest   分页请求对象, limit 为每页的数量
+     * @return CloseableIterator 需要在使用完后关闭
+     */
+    CloseableIterator<T> iterator(Class<T> var1, SearchRequest searchRequest, PageRequest pageRequest);
+}
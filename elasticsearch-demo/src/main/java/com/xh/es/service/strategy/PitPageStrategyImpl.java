@@ -0,0 +1,157 @@
+package com.xh.es.service.strategy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.xh.es.common.constant.ElasticSearchConst;
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchHitMapper;
+import com.xh.es.common.util.ElasticSearchSourceUtil;
+import com.xh.es.common.util.ElasticSearchUtil;
+import com.xh.es.model.dto.PageRequest;
+import com.xh.es.model.dto.RequestPitPage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @description: Point in time + search_after 深分页
+ *               替代 scroll: 不为每个分片保存搜索上下文,翻页使用 search_after,排序最后追加 _shard_doc 决胜;
+ *               每次翻页续期 PIT,遍历结束、出现异常或调用 close 时关闭 PIT
+ *               当前的 RestHighLevelClient(7.6) 没有 PIT 接口,打开、查询、关闭都通过低级客户端请求,需要 Elasticsearch 7.10 及以上版本
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Service("pitPageStrategy")
+@Slf4j
+@RequiredArgsConstructor
+public class PitPageStrategyImpl<T> implements IterablePageStrategy<T> {
+
+    private static final String SHARD_DOC = "_shard_doc";
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ElasticSearchProperties elasticSearchProperties;
+
+    @Override
+    public List<T> list(Class<T> var1, SearchRequest searchRequest, PageRequest pageRequest) throws IOException {
+        List<T> resultList = new ArrayList<>();
+        try (CloseableIterator<T> iterator = this.iterator(var1, searchRequest, pageRequest)) {
+            iterator.forEachRemaining(resultList::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return resultList;
+    }
+
+    @Override
+    public CloseableIterator<T> iterator(Class<T> var1, SearchRequest searchRequest, PageRequest pageRequest) {
+        RequestPitPage origin = (RequestPitPage) pageRequest;
+        TimeValue keepAlive = origin.getKeepAlive();
+        if (null == keepAlive) {
+            throw new RuntimeException("ES使用PIT分页,必须要传入保持时间!");
+        }
+        int limit = origin.getLimit();
+        SearchSourceBuilder searchSourceBuilder = null == searchRequest.source() ? new SearchSourceBuilder() : searchRequest.source();
+        return new AbstractPageIterator<T>() {
+
+            private String pitId;
+            private Object[] values = origin.getValues();
+
+            @Override
+            protected List<T> fetch() throws IOException {
+                if (null == pitId) {
+                    pitId = open(searchRequest, keepAlive);
+                }
+                ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), searchRequest);
+                Request request = new Request("POST", "/_search");
+                request.setJsonEntity(body(searchSourceBuilder, pitId, keepAlive, limit, values, null == values ? origin.getFrom() : 0));
+                Response response = restHighLevelClient.getLowLevelClient().performRequest(request);
+                JsonNode body = ElasticSearchSourceUtil.MAPPER.readTree(EntityUtils.toString(response.getEntity()));
+                // 每次查询返回的 pit_id 可能变化,后续请求和关闭都要使用最新的
+                if (body.hasNonNull("pit_id")) {
+                    pitId = body.get("pit_id").asText();
+                }
+                JsonNode hits = body.path("hits").path("hits");
+                if (hits.size() < limit) {
+                    // 不满一页说明已是最后一页,不再多请求一次空页
+                    this.exhausted();
+                } else {
+                    values = ElasticSearchSourceUtil.MAPPER.treeToValue(hits.get(hits.size() - 1).get("sort"), Object[].class);
+                }
+                List<T> list = new ArrayList<>(hits.size());
+                hits.forEach(hit -> list.add(ElasticSearchHitMapper.toBean(hit, var1, true)));
+                return list;
+            }
+
+            @Override
+            protected void release() throws IOException {
+                if (null == pitId) {
+                    return;
+                }
+                Request request = new Request("DELETE", "/_pit");
+                request.setJsonEntity(ElasticSearchSourceUtil.MAPPER.createObjectNode().put("id", pitId).toString());
+                Response response = restHighLevelClient.getLowLevelClient().performRequest(request);
+                if (!ElasticSearchSourceUtil.MAPPER.readTree(EntityUtils.toString(response.getEntity())).path("succeeded").asBoolean()) {
+                    log.error("PIT关闭失败,pitId={}", pitId);
+                }
+            }
+        };
+    }
+
+    /**
+     * 打开 PIT, routing/preference 在打开时指定,之后的查询不能再指定索引
+     */
+    private String open(SearchRequest searchRequest, TimeValue keepAlive) throws IOException {
+        Request request = new Request("POST", "/" + String.join(",", searchRequest.indices()) + "/_pit");
+        request.addParameter("keep_alive", keepAlive.getStringRep());
+        if (null != searchRequest.routing()) {
+            request.addParameter("routing", searchRequest.routing());
+        }
+        if (null != searchRequest.preference()) {
+            request.addParameter("preference", searchRequest.preference());
+        }
+        Response response = restHighLevelClient.getLowLevelClient().performRequest(request);
+        return ElasticSearchSourceUtil.MAPPER.readTree(EntityUtils.toString(response.getEntity())).get("id").asText();
+    }
+
+    /**
+     * 在查询 DSL 中加入 pit、search_after,排序最后追加 _shard_doc;
+     * 翻页不需要总数,关闭 track_total_hits; from 只用于第一次查询
+     */
+    private static String body(SearchSourceBuilder searchSourceBuilder, String pitId, TimeValue keepAlive, int limit, Object[] values, int from) throws IOException {
+        ObjectNode body = (ObjectNode) ElasticSearchSourceUtil.MAPPER.readTree(Strings.toString(searchSourceBuilder));
+        body.remove("from");
+        if (from > 0) {
+            body.put("from", from);
+        }
+        body.put("size", limit);
+        body.put("track_total_hits", false);
+        ArrayNode sort = body.has("sort") ? (ArrayNode) body.get("sort") : body.putArray("sort");
+        boolean tiebreaker = false;
+        for (JsonNode node : sort) {
+            tiebreaker |= SHARD_DOC.equals(node.asText()) || node.has(SHARD_DOC);
+        }
+        if (!tiebreaker) {
+            sort.addObject().put(SHARD_DOC, "asc");
+        }
+        body.putObject("pit").put("id", pitId).put("keep_alive", keepAlive.getStringRep());
+        if (null != values) {
+            body.set("search_after", ElasticSearchSourceUtil.MAPPER.valueToTree(values));
+        }
+        return body.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package com.xh.es.service.strategy;
+
+import com.xh.es.model.dto.PageRequest;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
+
+import java.io.IOException;
+
+/**
+ * 一次请求即可得到一页结果的分页策略(from-size、search_after),可以返回原始查询结果
+ * 需要多次请求才能得到结果的策略(scroll、PIT)不实现
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+public interface RawSearchPageStrategy<T> extends ElasticSearchRequestPageStrategy<T> {
+
+    /**
+     * 只执行一次查询并返回原始结果,不做对象转换,用于缓存查询结果
+     *
+     * @param searchRequest 搜索请求对象
+     * @param pageRequest   分页请求对象
+     * @return SearchResponse
+     * @throws IOException 异常
+     */
+    SearchResponse search(SearchRequest searchRequest, PageRequest pageRequest) throws IOException;
+
+    /**
+     * 异步执行一次查询, 与 {@link #search(SearchRequest, PageRequest)} 相同,结果在 listener 中返回
+     *
+     * @param searchRequest 搜索请求对象
+     * @param pageRequest   分页请求对象
+     * @param listener      查询结果回调, 在客户端的 IO 线程中执行
+     * @return Cancellable 用于取消正在执行的 HTTP 请求
+     */
+    Cancellable searchAsync(SearchRequest searchRequest, PageRequest pageRequest, ActionListener<SearchResponse> listener);
+}
@@ -2,36 +2,113 @@ package com.xh.es.service.strategy;
 
 import com.xh.es.common.constant.ElasticSearchConst;
 import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchHitMapper;
 import com.xh.es.common.util.ElasticSearchUtil;
 import com.xh.es.model.dto.PageRequest;
 import com.xh.es.model.dto.RequestScrollPage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.*;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.Scroll;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 
 @Service("scrollPageStrategy")
 @RequiredArgsConstructor
 @Slf4j
-public class ScrollPageStrategyImpl<T> implements ElasticSearchRequestPageStrategy<T> {
+public class ScrollPageStrategyImpl<T> implements HitIterablePageStrategy<T> {
 
     private final RestHighLevelClient restHighLevelClient;
-    private ElasticSearchProperties elasticSearchProperties;
+    private final ElasticSearchProperties elasticSearchProperties;
 
     @Override
     public List<T> list(Class<T> var1, SearchRequest searchRequest, PageRequest pageRequest) throws IOException {
         List<T> resultList = new ArrayList<>();
+        try (CloseableIterator<T> iterator = this.iterator(var1, searchRequest, pageRequest)) {
+            iterator.forEachRemaining(resultList::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return resultList;
+    }
+
+    @Override
+    public CloseableIterator<T> iterator(Class<T> var1, SearchRequest searchRequest, PageRequest pageRequest) {
+        return this.iterator(searchRequest, pageRequest, hit -> ElasticSearchHitMapper.toBean(hit, var1, false));
+    }
+
+    @Override
+    public <R> CloseableIterator<R> iterator(SearchRequest searchRequest, PageRequest pageRequest, Function<SearchHit, R> hitMapper) {
+        Scroll scroll = this.prepare(searchRequest, pageRequest);
+        return this.iterator(searchRequest, null, scroll, pageRequest, hitMapper);
+    }
+
+    /**
+     * 发出 scroll 的第一次查询, 调用方根据第一页(例如 track_total_hits)决定是否继续:
+     * 继续时通过 {@link #iterator(SearchResponse, PageRequest, Function)} 从第一页开始遍历, 否则调用 {@link #clear(String)}
+     *
+     * @param searchRequest 搜索请求对象
+     * @param pageRequest   {@link RequestScrollPage}, limit 为每页的数量
+     * @return 第一页, 包含 scrollId
+     * @throws IOException 异常
+     */
+    public SearchResponse open(SearchRequest searchRequest, PageRequest pageRequest) throws IOException {
+        this.prepare(searchRequest, pageRequest);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), searchRequest);
+        return restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 从 {@link #open(SearchRequest, PageRequest)} 返回的第一页开始逐页查询, 第一页不会重新请求
+     *
+     * @param first       第一页
+     * @param pageRequest 与 open 时相同的分页对象
+     * @param hitMapper   hit 的转换方法
+     * @param <R>         转换后的类型
+     * @return CloseableIterator 需要在使用完后关闭
+     */
+    public <R> CloseableIterator<R> iterator(SearchResponse first, PageRequest pageRequest, Function<SearchHit, R> hitMapper) {
+        Scroll scroll = new Scroll(((RequestScrollPage) pageRequest).getScrollTimeValue());
+        return this.iterator(null, first, scroll, pageRequest, hitMapper);
+    }
+
+    /**
+     * 异步清除 scroll, 不等待结果
+     *
+     * @param scrollId scrollId, 为空时不处理
+     */
+    public void clear(String scrollId) {
+        if (null == scrollId) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollId);
+        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), clearScrollRequest);
+        restHighLevelClient.clearScrollAsync(clearScrollRequest, RequestOptions.DEFAULT, ActionListener.wrap(response -> {
+            if (!response.isSucceeded()) {
+                log.error("scroll清除失败,scrollId={}", scrollId);
+            }
+        }, e -> log.error("scroll清除失败,scrollId={}", scrollId, e)));
+    }
+
+    /**
+     * 校验失效时间, 设置 scroll 和每页的数量
+     */
+    private Scroll prepare(SearchRequest searchRequest, PageRequest pageRequest) {
         RequestScrollPage requestScrollPage = (RequestScrollPage) pageRequest;
         //失效时间
         TimeValue scrollTimeValue = requestScrollPage.getScrollTimeValue();
@@ -43,29 +120,112 @@ public class ScrollPageStrategyImpl<T> implements ElasticSearchRequestPageStrate
         searchRequest.scroll(scroll);
         SearchSourceBuilder searchSourceBuilder = searchRequest.source();
         searchSourceBuilder.size(pageRequest.getLimit());
-        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), searchRequest);
-        SearchResponse searchResponse = restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
-        String scrollId;
-        do {
-            resultList.addAll(ElasticSearchUtil.searchResponseToList(searchResponse, var1));
-            //每次循环完后取得scrollId,用于记录下次将从这个游标开始取数
-            scrollId = searchResponse.getScrollId();
-            SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
-            scrollRequest.scroll(scroll);
-            ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), scrollRequest);
-            //进行下次查询
-            searchResponse = restHighLevelClient.scroll(scrollRequest, RequestOptions.DEFAULT);
-        } while (searchResponse.getHits().getHits().length != 0);
-        //清除滚屏
-        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
-        //也可以选择setScrollIds()将多个scrollId一起使用
-        clearScrollRequest.addScrollId(scrollId);
-        ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), clearScrollRequest);
-        ClearScrollResponse clearScrollResponse = restHighLevelClient.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
-        if (!clearScrollResponse.isSucceeded()) {
-            log.error("scroll清除失败,scrollId={}", scrollId);
+        return scroll;
+    }
+
+    /**
+     * 逐页查询, first 不为空时从已经返回的第一页开始(不再发出第一次查询)
+     */
+    private <R> CloseableIterator<R> iterator(SearchRequest searchRequest, SearchResponse first, Scroll scroll, PageRequest pageRequest, Function<SearchHit, R> hitMapper) {
+        int prefetchDepth = elasticSearchProperties.getSearch().getPrefetchDepth();
+        if (prefetchDepth > 0) {
+            return this.prefetchIterator(searchRequest, first, pageRequest, scroll, prefetchDepth, hitMapper);
         }
-        return resultList;
+        return new AbstractPageIterator<R>() {
+
+            private String scrollId;
+            private SearchResponse pending = first;
+
+            @Override
+            protected List<R> fetch() throws IOException {
+                SearchResponse searchResponse;
+                if (null != pending) {
+                    searchResponse = pending;
+                    pending = null;
+                } else if (null == scrollId) {
+                    ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), searchRequest);
+                    searchResponse = restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
+                } else {
+                    //取得上一页的scrollId,用于记录下次将从这个游标开始取数
+                    SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
+                    scrollRequest.scroll(scroll);
+                    ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), scrollRequest);
+                    searchResponse = restHighLevelClient.scroll(scrollRequest, RequestOptions.DEFAULT);
+                }
+                scrollId = searchResponse.getScrollId();
+                if (searchResponse.getHits().getHits().length < pageRequest.getLimit()) {
+                    // 不满一页说明已是最后一页,不再多请求一次空页
+                    this.exhausted();
+                }
+                SearchHit[] hits = searchResponse.getHits().getHits();
+                List<R> list = new ArrayList<>(hits.length);
+                for (SearchHit hit : hits) {
+                    list.add(hitMapper.apply(hit));
+                }
+                return list;
+            }
+
+            @Override
+            protected void release() throws IOException {
+                if (null == scrollId) {
+                    if (null == pending) {
+                        return;
+                    }
+                    // 第一页还没有遍历就关闭
+                    scrollId = pending.getScrollId();
+                }
+                //清除滚屏
+                ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+                clearScrollRequest.addScrollId(scrollId);
+                ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), clearScrollRequest);
+                ClearScrollResponse clearScrollResponse = restHighLevelClient.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+                if (!clearScrollResponse.isSucceeded()) {
+                    log.error("scroll清除失败,scrollId={}", scrollId);
+                }
+            }
+        };
+    }
+
+    /**
+     * 预取下一页: 上一页返回后立即用新的 scrollId 异步请求下一页,清除 scroll 也是异步的
+     */
+    private <R> CloseableIterator<R> prefetchIterator(SearchRequest searchRequest, SearchResponse first, PageRequest pageRequest, Scroll scroll, int prefetchDepth,
+                                                      Function<SearchHit, R> hitMapper) {
+        return new AbstractPrefetchPageIterator<R>(prefetchDepth, hitMapper) {
+
+            private String scrollId = null == first ? null : first.getScrollId();
+            private SearchResponse pending = first;
+
+            @Override
+            protected void request(ActionListener<SearchResponse> listener) {
+                if (null != pending) {
+                    // 第一页已经返回, 直接交给回调(同时发出下一页的请求)
+                    SearchResponse response = pending;
+                    pending = null;
+                    listener.onResponse(response);
+                } else if (null == scrollId) {
+                    ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), searchRequest);
+                    restHighLevelClient.searchAsync(searchRequest, RequestOptions.DEFAULT, listener);
+                } else {
+                    SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
+                    scrollRequest.scroll(scroll);
+                    ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), scrollRequest);
+                    restHighLevelClient.scrollAsync(scrollRequest, RequestOptions.DEFAULT, listener);
+                }
+            }
+
+            @Override
+            protected boolean advance(SearchResponse response) {
+                scrollId = response.getScrollId();
+                // 不满一页说明已是最后一页,不再多请求一次空页
+                return response.getHits().getHits().length >= pageRequest.getLimit();
+            }
+
+            @Override
+            protected void release() {
+                clear(scrollId);
+            }
+        };
     }
 
 }
@@ -0,0 +1,285 @@
+package com.xh.es.service.strategy;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.model.dto.RequestScrollPage;
+import com.xh.es.service.bulk.ElasticSearchShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.data.util.StreamUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 并行导出: 把一次 scroll 拆分为多个切片(sliced scroll),每个切片在导出线程中独立 scroll 并转换对象
+ * 切片数默认与索引的主分片数一致; 每次导出使用自己的线程池(线程数为 parallelism 与切片数中较小的一个),结束后关闭,
+ * 多个导出之间不会互相占用线程
+ * <p>
+ * 1: {@link #export(Class, SearchRequest, Consumer)} 在导出线程中直接回调,回调需要线程安全;
+ * 2: {@link #stream(Class, SearchRequest)} 通过有界队列把各切片的结果页合并为一个 Stream,消费慢时导出线程等待,
+ * 内存中最多有 队列容量 + 线程数 页结果; 等待超过 scroll 的保持时间(Stream 没有关闭就被丢弃、消费过慢)时切片失败并清除 scroll,
+ * 导出线程不会一直等待
+ * <p>
+ * 不保证结果顺序;任一切片失败时其余切片停止,各切片的 scroll 上下文都会清除
+ *
+ * @author H.Yang
+ * @date 2026/10/18
+ */
+@Slf4j
+@Component("scrollSliceExporter")
+public class ScrollSliceExporter<T> {
+
+    /**
+     * 切片结束标记
+     */
+    private static final Object END = new Object();
+
+    @Resource(name = "scrollPageStrategy")
+    private IterablePageStrategy<T> scrollPageStrategy;
+
+    private final ElasticSearchProperties.Export export;
+    private final ElasticSearchShardRouter elasticSearchShardRouter;
+    private final int parallelism;
+
+    public ScrollSliceExporter(ElasticSearchProperties elasticSearchProperties, ElasticSearchShardRouter elasticSearchShardRouter) {
+        this.export = elasticSearchProperties.getExport();
+        this.elasticSearchShardRouter = elasticSearchShardRouter;
+        this.parallelism = export.getParallelism() > 0 ? export.getParallelism() : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 并行导出, 每个文档在导出线程中回调 consumer
+     *
+     * @param var1          返回的实体
+     * @param searchRequest 搜索请求对象, 不会被修改
+     * @param consumer      文档回调, 会被多个线程同时调用
+     * @return 导出的文档数量
+     * @throws IOException 异常, 任一切片失败时在其余切片停止后抛出
+     */
+    public long export(Class<T> var1, SearchRequest searchRequest, Consumer<? super T> consumer) throws IOException {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        LongAdder count = new LongAdder();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<SearchRequest> slices = this.slices(searchRequest);
+        ExecutorService executorService = this.executorService(slices.size());
+        for (SearchRequest slice : slices) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try (CloseableIterator<T> iterator = this.iterator(var1, slice)) {
+                    while (!cancelled.get() && iterator.hasNext()) {
+                        consumer.accept(iterator.next());
+                        count.increment();
+                    }
+                }
+            }, executorService).whenComplete((v, e) -> {
+                if (null != e) {
+                    cancelled.set(true);
+                }
+            }));
+        }
+        // 已提交的切片执行完后线程退出
+        executorService.shutdown();
+        IOException exception = null;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                cancelled.set(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待切片导出时被中断");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                IOException ioException = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                if (null == exception) {
+                    exception = ioException;
+                } else {
+                    exception.addSuppressed(ioException);
+                }
+            }
+        }
+        if (null != exception) {
+            throw exception;
+        }
+        log.info("并行导出完成,切片数:{},文档数:{}", futures.size(), count.sum());
+        return count.sum();
+    }
+
+    /**
+     * 并行导出, 各切片的结果合并为一个 Stream
+     * 使用完后需要关闭(try-with-resources),提前关闭时各切片停止并清除 scroll 上下文
+     *
+     * @param var1          返回的实体
+     * @param searchRequest 搜索请求对象, 不会被修改
+     * @return Stream<T> 不保证顺序, 切片失败时在遍历中抛出 UncheckedIOException
+     */
+    public Stream<T> stream(Class<T> var1, SearchRequest searchRequest) {
+        List<SearchRequest> slices = this.slices(searchRequest);
+        ExecutorService executorService = this.executorService(slices.size());
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(parallelism * 2);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (SearchRequest slice : slices) {
+            executorService.execute(() -> {
+                try (CloseableIterator<T> iterator = this.iterator(var1, slice)) {
+                    List<T> page = new ArrayList<>(export.getSize());
+                    while (!cancelled.get() && iterator.hasNext()) {
+                        page.add(iterator.next());
+                        if (page.size() >= export.getSize()) {
+                            this.offer(queue, page, cancelled);
+                            page = new ArrayList<>(export.getSize());
+                        }
+                    }
+                    if (!page.isEmpty()) {
+                        this.offer(queue, page, cancelled);
+                    }
+                    this.offer(queue, END, cancelled);
+                } catch (RuntimeException | Error e) {
+                    // 任一切片失败时其余切片停止
+                    failure.compareAndSet(null, e);
+                    cancelled.set(true);
+                }
+            });
+        }
+        executorService.shutdown();
+        return StreamUtils.createStreamFromIterator(new CloseableIterator<T>() {
+
+            private Iterator<T> page = Collections.emptyIterator();
+            private int remaining = slices.size();
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean hasNext() {
+                while (!page.hasNext() && remaining > 0) {
+                    Throwable throwable = failure.get();
+                    if (null != throwable) {
+                        this.close();
+                        if (throwable instanceof RuntimeException) {
+                            throw (RuntimeException) throwable;
+                        }
+                        throw new UncheckedIOException(new IOException(throwable));
+                    }
+                    if (cancelled.get()) {
+                        break;
+                    }
+                    Object next;
+                    try {
+                        next = queue.poll(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        this.close();
+                        Thread.currentThread().interrupt();
+                        throw new UncheckedIOException(new InterruptedIOException("等待切片导出结果时被中断"));
+                    }
+                    if (END == next) {
+                        remaining--;
+                    } else if (null != next) {
+                        page = ((List<T>) next).iterator();
+                    }
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+
+            @Override
+            public void close() {
+                cancelled.set(true);
+                page = Collections.emptyIterator();
+                queue.clear();
+            }
+        });
+    }
+
+    /**
+     * 队列已满时等待,已取消时放弃;
+     * 等待超过 scroll 的保持时间时 scroll 上下文已经失效,抛出异常使切片失败(关闭迭代器清除 scroll)
+     */
+    private void offer(BlockingQueue<Object> queue, Object item, AtomicBoolean cancelled) {
+        long timeoutNanos = TimeUnit.MINUTES.toNanos(export.getKeepAliveMinutes());
+        long start = System.nanoTime();
+        try {
+            while (!cancelled.get()) {
+                if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                if (System.nanoTime() - start >= timeoutNanos) {
+                    throw new RuntimeException("并行导出的结果超过" + export.getKeepAliveMinutes() + "分钟(scroll 保持时间)未被消费,切片停止!");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("等待切片导出结果被消费时被中断"));
+        }
+    }
+
+    /**
+     * 本次导出使用的线程池, 线程数不超过切片数
+     */
+    private ExecutorService executorService(int slices) {
+        return Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, slices)), ThreadUtil.newNamedThreadFactory("es-export-", true));
+    }
+
+    private CloseableIterator<T> iterator(Class<T> var1, SearchRequest slice) {
+        RequestScrollPage requestScrollPage = RequestScrollPage.of(export.getSize(), TimeValue.timeValueMinutes(export.getKeepAliveMinutes()));
+        return scrollPageStrategy.iterator(var1, slice, requestScrollPage);
+    }
+
+    /**
+     * 按切片数复制查询请求, 只有一个切片时不设置 slice
+     */
+    private List<SearchRequest> slices(SearchRequest searchRequest) {
+        int max = this.sliceCount(searchRequest.indices());
+        SearchSourceBuilder source = null == searchRequest.source() ? new SearchSourceBuilder() : searchRequest.source();
+        List<SearchRequest> slices = new ArrayList<>(max);
+        for (int i = 0; i < max; i++) {
+            SearchRequest slice = new SearchRequest(searchRequest.indices())
+                    .source(source.copyWithNewSlice(max > 1 ? new SliceBuilder(i, max) : null))
+                    .routing(searchRequest.routing())
+                    .preference(searchRequest.preference());
+            slices.add(slice);
+        }
+        return slices;
+    }
+
+    private int sliceCount(String[] indices) {
+        if (export.getSlices() > 0) {
+            return export.getSlices();
+        }
+        if (indices.length == 1) {
+            ElasticSearchShardRouter.Routing routing = elasticSearchShardRouter.getRouting(indices[0]);
+            if (null != routing) {
+                return routing.getNumberOfShards();
+            }
+        }
+        return parallelism;
+    }
+}
@@ -2,24 +2,31 @@ package com.xh.es.service.strategy;
 
 import com.xh.es.common.constant.ElasticSearchConst;
 import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchHitMapper;
 import com.xh.es.common.util.ElasticSearchUtil;
 import com.xh.es.model.dto.PageRequest;
 import com.xh.es.model.dto.RequestSearchAfterPage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortBuilder;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * @description:
@@ -29,13 +36,35 @@ import java.util.List;
 @Service("searchAfterPageStrategy")
 @Slf4j
 @RequiredArgsConstructor
-public class SearchAfterPageStrategyImpl<T> implements ElasticSearchRequestPageStrategy<T> {
+public class SearchAfterPageStrategyImpl<T> implements RawSearchPageStrategy<T>, HitIterablePageStrategy<T> {
 
     private final RestHighLevelClient restHighLevelClient;
-    private ElasticSearchProperties elasticSearchProperties;
+    private final ElasticSearchProperties elasticSearchProperties;
 
     @Override
     public List<T> list(Class<T> var1, SearchRequest searchRequest, PageRequest pageRequest) throws IOException {
+        SearchResponse response = this.search(searchRequest, pageRequest);
+        List<T> list = ElasticSearchUtil.searchResponseToList(response, var1, true);
+        log.info("size:{},list:{}", list.size(), list);
+        return list;
+    }
+
+    @Override
+    public SearchResponse search(SearchRequest searchRequest, PageRequest pageRequest) throws IOException {
+        this.prepare(searchRequest, pageRequest);
+        return restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
+    }
+
+    @Override
+    public Cancellable searchAsync(SearchRequest searchRequest, PageRequest pageRequest, ActionListener<SearchResponse> listener) {
+        this.prepare(searchRequest, pageRequest);
+        return restHighLevelClient.searchAsync(searchRequest, RequestOptions.DEFAULT, listener);
+    }
+
+    /**
+     * 在查询中加入唯一标识排序、分页大小以及上一页的 sort
+     */
+    private void prepare(SearchRequest searchRequest, PageRequest pageRequest) {
         SearchSourceBuilder searchSourceBuilder = searchRequest.source();
         // 因为pageRequest中的RequestSearchAfterPage包含唯一的标识,所以这里需要做处理
         RequestSearchAfterPage requestSearchAfterPage = (RequestSearchAfterPage) pageRequest;
@@ -64,10 +93,56 @@ public class SearchAfterPageStrategyImpl<T> implements ElasticSearchRequestPageS
         }
         searchRequest.source(searchSourceBuilder);
         ElasticSearchUtil.esLog(ElasticSearchConst.ESLogLevelEnum.getByLevel(elasticSearchProperties.getLevel()), searchRequest);
-        SearchResponse response = restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
-        List<T> list = ElasticSearchUtil.searchResponseToList(response, var1, true);
-        log.info("size:{},list:{}", list.size(), list);
-        return list;
+    }
+
+    @Override
+    public CloseableIterator<T> iterator(Class<T> var1, SearchRequest searchRequest, PageRequest pageRequest) {
+        return this.iterator(searchRequest, pageRequest, hit -> ElasticSearchHitMapper.toBean(hit, var1, true));
+    }
+
+    @Override
+    public <R> CloseableIterator<R> iterator(SearchRequest searchRequest, PageRequest pageRequest, Function<SearchHit, R> hitMapper) {
+        RequestSearchAfterPage origin = (RequestSearchAfterPage) pageRequest;
+        // 翻页时更新的是副本中的 values, 不修改调用方的分页对象
+        RequestSearchAfterPage requestSearchAfterPage = RequestSearchAfterPage.of(origin.getLimit(), origin.getUnique(), origin.getSortOrder(), origin.getValues());
+        int prefetchDepth = elasticSearchProperties.getSearch().getPrefetchDepth();
+        if (prefetchDepth > 0) {
+            // 上一页返回后即可拿到最后一个文档的 sort, 立即异步请求下一页
+            return new AbstractPrefetchPageIterator<R>(prefetchDepth, hitMapper) {
+                @Override
+                protected void request(ActionListener<SearchResponse> listener) {
+                    prepare(searchRequest, requestSearchAfterPage);
+                    restHighLevelClient.searchAsync(searchRequest, RequestOptions.DEFAULT, listener);
+                }
+
+                @Override
+                protected boolean advance(SearchResponse response) {
+                    SearchHit[] hits = response.getHits().getHits();
+                    if (hits.length < requestSearchAfterPage.getLimit()) {
+                        return false;
+                    }
+                    requestSearchAfterPage.setValues(hits[hits.length - 1].getSortValues());
+                    return true;
+                }
+            };
+        }
+        return new AbstractPageIterator<R>() {
+            @Override
+            protected List<R> fetch() throws IOException {
+                SearchResponse response = search(searchRequest, requestSearchAfterPage);
+                SearchHit[] hits = response.getHits().getHits();
+                if (hits.length < requestSearchAfterPage.getLimit()) {
+                    this.exhausted();
+                } else {
+                    requestSearchAfterPage.setValues(hits[hits.length - 1].getSortValues());
+                }
+                List<R> list = new ArrayList<>(hits.length);
+                for (SearchHit hit : hits) {
+                    list.add(hitMapper.apply(hit));
+                }
+                return list;
+            }
+        };
     }
 
 }
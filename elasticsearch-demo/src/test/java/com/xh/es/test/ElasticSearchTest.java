@@ -2,23 +2,55 @@ package com.xh.es.test;
 
 import cn.hutool.json.JSONUtil;
 import com.xh.es.common.constant.ElasticSearchConst;
+import com.xh.es.common.properties.ElasticSearchProperties;
+import com.xh.es.common.util.ElasticSearchHitMapper;
+import com.xh.es.common.util.ElasticSearchSourceUtil;
 import com.xh.es.model.UserEntity;
 import com.xh.es.model.dto.*;
+import com.xh.es.service.AsyncElasticSearchService;
+import com.xh.es.service.ElasticSearchIngestService;
 import com.xh.es.service.ElasticSearchService;
+import com.xh.es.service.bulk.ElasticSearchBulkLoader;
+import com.xh.es.service.bulk.ElasticSearchCoalescingBuffer;
+import com.xh.es.service.bulk.ElasticSearchSpool;
+import com.xh.es.service.cache.ElasticSearchDocumentCache;
+import com.xh.es.service.cache.ElasticSearchQueryCache;
+import com.xh.es.service.script.ElasticSearchScriptRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.apache.http.util.EntityUtils;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.sort.SortOrder;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.util.CollectionUtils;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 /**
  * @author H.Yang
@@ -31,6 +63,26 @@ public class ElasticSearchTest {
 
     @Autowired
     private ElasticSearchService elasticSearchService;
+    @Autowired
+    private ElasticSearchIngestService elasticSearchIngestService;
+    @Autowired
+    private ElasticSearchCoalescingBuffer elasticSearchCoalescingBuffer;
+    @Autowired
+    private ElasticSearchBulkLoader elasticSearchBulkLoader;
+    @Autowired(required = false)
+    private ElasticSearchSpool elasticSearchSpool;
+    @Autowired
+    private ElasticSearchScriptRegistry elasticSearchScriptRegistry;
+    @Autowired
+    private ElasticSearchDocumentCache elasticSearchDocumentCache;
+    @Autowired
+    private ElasticSearchQueryCache elasticSearchQueryCache;
+    @Autowired
+    private RestHighLevelClient restHighLevelClient;
+    @Autowired
+    private ElasticSearchProperties elasticSearchProperties;
+    @Autowired
+    private AsyncElasticSearchService asyncElasticSearchService;
 
     @Test
     public void getById() throws IOException {
@@ -38,6 +90,50 @@ public class ElasticSearchTest {
         log.info("根据ID查询:{}", demo);
     }
 
+    @Test
+    public void getByIds() throws IOException {
+        // 并发的 getDocument 在同一窗口内合并为一次 _mget
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            String id = String.valueOf(i);
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return elasticSearchService.getDocument(UserEntity.class, "demo", id);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        futures.forEach(CompletableFuture::join);
+
+        Map<String, UserEntity> documents = (Map<String, UserEntity>) elasticSearchService.getDocuments(UserEntity.class, "demo", Arrays.asList("1", "2", "3", "1"));
+        log.info("根据IDS查询:{}", documents);
+    }
+
+    @Test
+    public void getByIdCached() throws IOException {
+        // 需要开启 elasticsearch.cache.enabled,第二次读取命中缓存,修改后缓存被移除
+        elasticSearchService.getDocument(UserEntity.class, "demo", "1");
+        elasticSearchService.getDocument(UserEntity.class, "demo", "1");
+        UserEntity entity = this.getUser();
+        elasticSearchService.updateDocument(entity, "demo", "1");
+        UserEntity demo = (UserEntity) elasticSearchService.getDocument(UserEntity.class, "demo", "1");
+        log.info("修改后查询:{},缓存统计:{}", demo, elasticSearchDocumentCache.getStats());
+    }
+
+    @Test
+    public void getListCached() throws IOException {
+        // 需要开启 elasticsearch.query-cache.enabled,条件顺序不同的相同查询命中同一份缓存,写入后失效
+        ElasticSearchConditionDTO userId = ElasticSearchConditionDTO.builder().k("userId").v("1").and(true).operation(ElasticSearchConst.ESOperationEnum.TERM_QUERY).build();
+        ElasticSearchConditionDTO account = ElasticSearchConditionDTO.builder().k("account").v("1").and(true).operation(ElasticSearchConst.ESOperationEnum.TERM_QUERY).build();
+        elasticSearchService.getListByCondition(UserEntity.class, "demo", Arrays.asList(userId, account));
+        elasticSearchService.getListByCondition(UserEntity.class, "demo", Arrays.asList(account, userId));
+        log.info("写入前缓存统计:{}", elasticSearchQueryCache.getStats());
+        elasticSearchService.updateDocument(this.getUser(), "demo", "1");
+        List<UserEntity> list = (List<UserEntity>) elasticSearchService.getListByCondition(UserEntity.class, "demo", Arrays.asList(userId, account));
+        log.info("写入后查询:{},缓存统计:{}", list, elasticSearchQueryCache.getStats());
+    }
+
 
     @Test
     public void createOne() throws IOException {
@@ -66,6 +162,243 @@ public class ElasticSearchTest {
         log.info("批量添加文档结果:{}", elasticSearchService.addBatchDocument(map, "demo"));
     }
 
+    @Test
+    public void addBatchByStream() throws IOException {
+        Stream<UserEntity> stream = LongStream.rangeClosed(1L, 100000L).mapToObj(i -> {
+            UserEntity entity = this.getUser();
+            entity.setUserId(i);
+            return entity;
+        });
+        Function<UserEntity, String> idExtractor = u -> String.valueOf(u.getUserId());
+        boolean result = elasticSearchService.addBatchDocument(stream, idExtractor, "demo");
+        log.info("流式批量添加文档结果:{}", result);
+        log.info("bulk 限流指标:{}", elasticSearchService.getBulkLimiterMetrics());
+    }
+
+    @Test
+    public void addBatchByRouting() throws IOException {
+        Stream<UserEntity> stream = LongStream.rangeClosed(1L, 100000L).mapToObj(i -> {
+            UserEntity entity = this.getUser();
+            entity.setUserId(i % 100);
+            entity.setAccount(String.valueOf(i));
+            return entity;
+        });
+        Function<UserEntity, String> idExtractor = UserEntity::getAccount;
+        Function<UserEntity, String> routingExtractor = u -> String.valueOf(u.getUserId());
+        boolean result = elasticSearchService.addBatchDocument(stream, idExtractor, routingExtractor, "demo");
+        log.info("按 routing 流式批量添加文档结果:{}", result);
+        UserEntity demo = (UserEntity) elasticSearchService.getDocument(UserEntity.class, "demo", "1", "1");
+        log.info("根据ID和routing查询:{}", demo);
+    }
+
+    @Test
+    public void ingest() throws Exception {
+        List<CompletableFuture<BulkItemResponse>> futures = new ArrayList<>();
+        for (long i = 1L; i <= 21L; i++) {
+            futures.add(elasticSearchIngestService.addDocument(this.getUser(), "demo", String.valueOf(i)));
+        }
+        elasticSearchIngestService.flush();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        log.info("写入管道提交文档数量:{}", futures.size());
+    }
+
+    /**
+     * 序列化分配量对比: JSONUtil.toJsonStr -> String -> source 与 ElasticSearchSourceUtil 直接写入字节缓冲区
+     * 使用线程分配字节数统计,先预热再统计每个文档的平均分配量
+     */
+    @Test
+    public void serializationAllocation() {
+        UserEntity entity = this.getUser();
+        entity.setPassword("password");
+        int count = 200000;
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < 2; round++) {
+            long start = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < count; i++) {
+                new IndexRequest("demo").id(String.valueOf(i)).source(JSONUtil.toJsonStr(entity), XContentType.JSON);
+            }
+            long old = (threadMXBean.getThreadAllocatedBytes(threadId) - start) / count;
+
+            start = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < count; i++) {
+                ElasticSearchSourceUtil.source(new IndexRequest("demo").id(String.valueOf(i)), entity);
+            }
+            long current = (threadMXBean.getThreadAllocatedBytes(threadId) - start) / count;
+            log.info("第{}轮 UserEntity 每个文档分配字节数: JSONUtil.toJsonStr={}, ElasticSearchSourceUtil={}", round + 1, old, current);
+        }
+    }
+
+    /**
+     * 查询结果转换对比: 拼接 JSON 数组(search_after 场景每个 hit 先解析再插入 sort) + JSONUtil.toList 与 ElasticSearchHitMapper 逐个 hit 反序列化
+     * 使用 1000 个 hit 的一页结果,先预热再统计每页的平均耗时和分配量
+     */
+    @Test
+    public void hitMapping() {
+        SearchHit[] array = new SearchHit[ElasticSearchConst.SCROLL_LIMIT];
+        for (int i = 0; i < array.length; i++) {
+            UserEntity entity = this.getUser();
+            entity.setUserId((long) i);
+            SearchHit hit = new SearchHit(i, String.valueOf(i), null, Collections.emptyMap());
+            hit.sourceRef(ElasticSearchSourceUtil.toBytes(entity));
+            hit.sortValues(new Object[]{(long) i}, new DocValueFormat[]{DocValueFormat.RAW});
+            array[i] = hit;
+        }
+        SearchHits hits = new SearchHits(array, new TotalHits(array.length, TotalHits.Relation.EQUAL_TO), 1F);
+        int pages = 200;
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < pages; i++) {
+                StringJoiner joiner = new StringJoiner(",", "[", "]");
+                for (SearchHit hit : hits.getHits()) {
+                    cn.hutool.json.JSONObject jsonObject = JSONUtil.parseObj(hit.getSourceAsString());
+                    jsonObject.putOpt("sort", hit.getSortValues());
+                    joiner.add(JSONUtil.toJsonStr(jsonObject));
+                }
+                JSONUtil.toList(joiner.toString(), UserEntity.class);
+            }
+            long oldNanos = (System.nanoTime() - start) / pages;
+            long oldBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - allocated) / pages;
+
+            start = System.nanoTime();
+            allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            List<UserEntity> list = null;
+            for (int i = 0; i < pages; i++) {
+                list = ElasticSearchHitMapper.toList(hits, UserEntity.class, true);
+            }
+            long newNanos = (System.nanoTime() - start) / pages;
+            long newBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - allocated) / pages;
+            log.info("第{}轮 每页{}个hit: 拼接JSON 耗时{}us 分配{}KB, ElasticSearchHitMapper 耗时{}us 分配{}KB, 最后一个userId={}", round + 1, array.length,
+                    oldNanos / 1000, oldBytes / 1024, newNanos / 1000, newBytes / 1024, list.get(list.size() - 1).getUserId());
+        }
+    }
+
+    @Test
+    public void coalesce() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            Map<String, Object> partial = new HashMap<>();
+            partial.put("account", "account-" + i);
+            elasticSearchCoalescingBuffer.update(partial, "demo", "1");
+        }
+        ElasticSearchBulkResultDTO result = elasticSearchCoalescingBuffer.flush();
+        log.info("合并缓冲提交结果:{},累计接收:{},累计提交:{}", result, elasticSearchCoalescingBuffer.getReceived(), elasticSearchCoalescingBuffer.getFlushed());
+    }
+
+    @Test
+    public void upsert() throws IOException {
+        Map<String, Object> partial = new HashMap<>();
+        partial.put("account", "upsert");
+        UserEntity demo = (UserEntity) elasticSearchService.upsertDocument(UserEntity.class, partial, "demo", "upsert-1");
+        log.info("更新或创建结果:{}", JSONUtil.toJsonStr(demo));
+
+        Map<String, Object> map = new HashMap<>();
+        for (long i = 1L; i <= 21L; i++) {
+            map.put("upsert-" + i, this.getUser());
+        }
+        Map<String, Object> documents = elasticSearchService.upsertBatchDocument(UserEntity.class, "demo", map);
+        log.info("批量更新或创建结果:{}", documents.size());
+    }
+
+    @Test
+    public void updateByCondition() throws IOException {
+        List<ElasticSearchConditionDTO> conditionDos = new ArrayList<>();
+        conditionDos.add(ElasticSearchConditionDTO.builder()
+                .k("userId")
+                .v("1")
+                .and(true)
+                .operation(ElasticSearchConst.ESOperationEnum.TERM_QUERY)
+                .build());
+        // 不同的字段组合引用同一个存储脚本
+        UserEntity account = new UserEntity();
+        account.setAccount("account");
+        UserEntity password = new UserEntity();
+        password.setPassword("password");
+        long updated = elasticSearchService.updateDocumentByCondition(account, "demo", conditionDos)
+                + elasticSearchService.updateDocumentByCondition(password, "demo", conditionDos);
+        log.info("根据条件更新数量:{},使用的不同脚本数量:{}", updated, elasticSearchScriptRegistry.getDistinctScripts());
+    }
+
+    @Test
+    public void updateByConditionAsync() throws Exception {
+        List<ElasticSearchConditionDTO> conditionDos = new ArrayList<>();
+        conditionDos.add(ElasticSearchConditionDTO.builder()
+                .k("userId")
+                .v("1")
+                .and(true)
+                .operation(ElasticSearchConst.ESOperationEnum.TERM_QUERY)
+                .build());
+        UserEntity account = new UserEntity();
+        account.setAccount("async");
+        String taskId = elasticSearchService.updateDocumentByConditionAsync(account, "demo", conditionDos);
+        ElasticSearchTaskDTO task;
+        do {
+            Thread.sleep(500L);
+            task = elasticSearchService.getTask(taskId);
+            log.info("任务[{}]进度:{},更新:{},批次:{}", taskId, task.getProgress(), task.getUpdated(), task.getBatches());
+        } while (!task.isCompleted());
+        log.info("任务[{}]结束,失败:{}", taskId, task.getFailures());
+    }
+
+    @Test
+    public void updateBatchVersioned() throws Exception {
+        List<String> ids = Arrays.asList("1", "2", "3");
+        // 多个写入方并发修改同一批文档,冲突的文档重新读取后合并
+        BiFunction<String, UserEntity, Object> merge = (id, current) -> {
+            UserEntity entity = null == current ? this.getUser() : current;
+            entity.setAccount(Thread.currentThread().getName());
+            return entity;
+        };
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return elasticSearchService.updateBatchDocument(UserEntity.class, "demo", ids, merge);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        for (CompletableFuture<Boolean> future : futures) {
+            log.info("带版本号的批量更新结果:{}", future.get());
+        }
+    }
+
+    @Test
+    public void bulkLoad() throws IOException {
+        Stream<UserEntity> stream = LongStream.rangeClosed(1L, 100000L).mapToObj(i -> {
+            UserEntity entity = this.getUser();
+            entity.setUserId(i);
+            return entity;
+        });
+        Function<UserEntity, String> idExtractor = u -> String.valueOf(u.getUserId());
+        // 导入期间关闭刷新和副本,结束后恢复设置并合并为1个段
+        ElasticSearchBulkResultDTO result = elasticSearchBulkLoader.load("demo", stream, idExtractor, 1);
+        log.info("批量导入结果,成功:{},失败:{}", result.getSucceededCount(), result.getFailedItems().size());
+    }
+
+    /**
+     * 需要 elasticsearch.spool.enabled=true
+     */
+    @Test
+    public void spool() throws InterruptedException {
+        if (null == elasticSearchSpool) {
+            log.info("未开启 spool");
+            return;
+        }
+        long start = System.nanoTime();
+        for (long i = 1L; i <= 100000L; i++) {
+            elasticSearchSpool.index(this.getUser(), "demo", String.valueOf(i));
+        }
+        log.info("追加到 spool 平均耗时:{}ns", (System.nanoTime() - start) / 100000L);
+        while (elasticSearchSpool.getDrained() < elasticSearchSpool.getAppended()) {
+            Thread.sleep(500L);
+            log.info("spool 已回放:{}/{},回放速度:{} docs/s", elasticSearchSpool.getDrained(), elasticSearchSpool.getAppended(), (long) elasticSearchSpool.getDrainRate());
+        }
+    }
+
     @Test
     public void deleteById() throws IOException {
         boolean del = elasticSearchService.deleteDocument("demo", "1");
@@ -275,6 +608,121 @@ public class ElasticSearchTest {
     }
 
 
+    @Test
+    public void getStreamByCondition() throws IOException {
+        // 逐页查询,同一时刻只有一页结果在内存中,关闭时清除 scroll
+        try (Stream<UserEntity> stream = (Stream<UserEntity>) elasticSearchService.getStreamByCondition(UserEntity.class, "demo", this.getSearchDto())) {
+            log.info("逐页查询数量:{}", stream.count());
+        }
+    }
+
+    /**
+     * 逐页查询预取对比: prefetchDepth=0 时当前页转换完才查询下一页, 大于 0 时转换当前页的同时异步查询下一页
+     */
+    @Test
+    public void getStreamByConditionPrefetch() throws IOException {
+        ElasticSearchProperties.Search search = elasticSearchProperties.getSearch();
+        int prefetchDepth = search.getPrefetchDepth();
+        try {
+            for (int depth : new int[]{0, Math.max(prefetchDepth, 1)}) {
+                search.setPrefetchDepth(depth);
+                long start = System.currentTimeMillis();
+                try (Stream<UserEntity> stream = (Stream<UserEntity>) elasticSearchService.getStreamByCondition(UserEntity.class, "demo", this.getSearchDto())) {
+                    log.info("预取页数:{},数量:{},耗时:{}ms", depth, stream.count(), System.currentTimeMillis() - start);
+                }
+            }
+        } finally {
+            search.setPrefetchDepth(prefetchDepth);
+        }
+    }
+
+    @Test
+    public void exportByCondition() throws IOException {
+        // 按主分片数切片并行 scroll, 回调在导出线程中执行
+        LongAdder adder = new LongAdder();
+        Consumer<UserEntity> consumer = entity -> adder.increment();
+        long count = elasticSearchService.exportByCondition(UserEntity.class, "demo", this.getSearchDto(), consumer);
+        log.info("并行导出数量:{},回调次数:{}", count, adder.sum());
+
+        try (Stream<UserEntity> stream = (Stream<UserEntity>) elasticSearchService.getParallelStreamByCondition(UserEntity.class, "demo", this.getSearchDto())) {
+            log.info("并行导出(stream)数量:{}", stream.count());
+        }
+    }
+
+    @Test
+    public void getIdsByCondition() throws IOException {
+        // 只返回需要的字段
+        ElasticSearchSearchDTO searchDto = this.getSearchDto();
+        searchDto.setIncludes(new String[]{"userId", "username"});
+        List<UserEntity> list = (List<UserEntity>) elasticSearchService.getListByCondition(UserEntity.class, "demo", searchDto);
+        log.info("只返回 userId、username 的查询数量:{}", list.size());
+
+        // 不返回 _source
+        List<String> ids = elasticSearchService.getIdsByCondition("demo", this.getSearchDto());
+        log.info("id数量:{}", ids.size());
+
+        // 从 doc values 读取 userId, 不返回 _source 和 _id
+        long[] userIds = elasticSearchService.getLongValuesByCondition("demo", this.getSearchDto(), "userId");
+        log.info("userId数量:{}", userIds.length);
+    }
+
+    /**
+     * scroll 与 PIT + search_after 深分页对比: 耗时、本线程分配字节数、遍历期间节点上打开的搜索上下文数量
+     * PIT 需要 Elasticsearch 7.10 及以上版本
+     */
+    @Test
+    public void deepPageScrollVsPit() throws IOException {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Map<String, PageRequest> pageRequests = new LinkedHashMap<>();
+        pageRequests.put("scroll", RequestScrollPage.of(ElasticSearchConst.SCROLL_LIMIT, TimeValue.timeValueMinutes(2)));
+        pageRequests.put("pit", RequestPitPage.of(ElasticSearchConst.SCROLL_LIMIT, TimeValue.timeValueMinutes(2)));
+        for (int round = 0; round < 2; round++) {
+            for (Map.Entry<String, PageRequest> entry : pageRequests.entrySet()) {
+                long start = System.currentTimeMillis();
+                long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+                long count = 0;
+                long openContexts = -1;
+                try (CloseableIterator<UserEntity> iterator = (CloseableIterator<UserEntity>) elasticSearchService.getIteratorByCondition(UserEntity.class, "demo", this.getSearchDto(), entry.getValue())) {
+                    while (iterator.hasNext()) {
+                        iterator.next();
+                        if (++count == 1) {
+                            openContexts = this.openContexts();
+                        }
+                    }
+                }
+                log.info("第{}轮 {} 文档数:{},耗时:{}ms,分配字节数:{},遍历期间打开的搜索上下文:{}", round + 1, entry.getKey(), count,
+                        System.currentTimeMillis() - start, threadMXBean.getThreadAllocatedBytes(threadId) - allocated, openContexts);
+            }
+        }
+    }
+
+    private long openContexts() throws IOException {
+        Response response = restHighLevelClient.getLowLevelClient().performRequest(new Request("GET", "/_nodes/stats/indices/search"));
+        cn.hutool.json.JSONObject nodes = JSONUtil.parseObj(EntityUtils.toString(response.getEntity())).getJSONObject("nodes");
+        return nodes.values().stream().mapToLong(node -> JSONUtil.parseObj(node).getByPath("indices.search.open_contexts", Long.class)).sum();
+    }
+
+    /**
+     * 非阻塞查询: 列表与数量同时请求; cancel 时取消正在执行的 HTTP 请求(scroll 的后续页不再请求)
+     */
+    @Test
+    public void asyncGetListByCondition() throws Exception {
+        long start = System.currentTimeMillis();
+        CompletableFuture<List<UserEntity>> list = (CompletableFuture<List<UserEntity>>) asyncElasticSearchService.getListByCondition(UserEntity.class, "demo", this.getSearchDto());
+        CompletableFuture<Long> count = (CompletableFuture<Long>) asyncElasticSearchService.count("demo", null);
+        log.info("列表数量:{},总数:{},耗时:{}ms", list.get().size(), count.get(), System.currentTimeMillis() - start);
+
+        CompletableFuture<List<UserEntity>> cancelled = (CompletableFuture<List<UserEntity>>) asyncElasticSearchService.getListByCondition(UserEntity.class, "demo", this.getSearchDto());
+        log.info("取消查询:{}", cancelled.cancel(true));
+        try {
+            cancelled.join();
+        } catch (CancellationException e) {
+            log.info("查询已取消,open_contexts:{}", this.openContexts());
+        }
+    }
+
+
     private UserEntity getUser() {
         long millis = System.currentTimeMillis();
 